@@ -40,9 +40,16 @@ import org.joda.time.format.PeriodFormatterBuilder;
 import org.neotree.inject.ApplicationComponent;
 import org.neotree.inject.DaggerApplicationComponent;
 import org.neotree.inject.module.ApplicationModule;
-import org.neotree.support.android.AndroidHelper;
+import org.neotree.support.android.ImageLoader;
+import org.neotree.support.datastore.ImageBlobStore;
+import org.neotree.support.datastore.ScriptCache;
+import org.neotree.support.metrics.JankMonitor;
+import org.neotree.support.metrics.MetricsRegistry;
 import org.neotree.support.realm.EncryptionKeyStore;
 import org.neotree.support.realm.NeoTreeRealmMigration;
+import org.neotree.support.startup.StartupPipeline;
+
+import java.io.File;
 
 import io.fabric.sdk.android.Fabric;
 import io.realm.Realm;
@@ -70,7 +77,8 @@ public class NeoTree extends MultiDexApplication {
     public static final String EXTRA_SCREEN = EXTRA_PREFIX + "screen";
 
     private ApplicationComponent mApplicationComponent;
-    private RealmConfiguration mRealmConfiguration;
+    private volatile RealmConfiguration mRealmConfiguration;
+    private final StartupPipeline mStartup = new StartupPipeline();
 
     @Override
     public void onCreate() {
@@ -86,24 +94,46 @@ public class NeoTree extends MultiDexApplication {
             MultiDex.install(this);
         }
 
-        // Joda Time
-        JodaTimeAndroid.init(this);
-
-        // Firebase
-//        FirebaseApp.initializeApp(this);
-        FirebaseDatabase.getInstance().setPersistenceEnabled(true);
-
         if (BuildConfig.DEBUG) {
             configureDevTools();
         }
-        configureDependencyInjector();
-        configureDatastore();
+
+        if (getResources().getBoolean(R.bool.enable_jank_monitor)) {
+            JankMonitor.get().start(this, getResources().getInteger(R.integer.jank_stall_threshold_millis));
+        }
+
+        // Everything below the injector runs in the background, activities wait in awaitStartup()
+        mStartup.run("injector", this::configureDependencyInjector);
+        mStartup.runAsync("joda", () -> JodaTimeAndroid.init(this));
+        mStartup.runAsync("firebase", () -> FirebaseDatabase.getInstance().setPersistenceEnabled(true));
+        mStartup.runAsyncOptional("caches", this::configureCaches);
+        mStartup.runAsync("realm", () -> {
+            configureDatastore();
+
+            // Resume uploads left pending by a previous run, the datastore is usable without it
+            try {
+                mApplicationComponent.sessionUploadQueue().flush();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error resuming pending uploads", e);
+            }
+        });
     }
 
     public ApplicationComponent getComponent() {
         return mApplicationComponent;
     }
 
+    /**
+     * Blocks until the datastore and the other background startup work are ready.
+     */
+    public void awaitStartup() {
+        mStartup.await();
+    }
+
+    public StartupPipeline getStartup() {
+        return mStartup;
+    }
+
     public static SharedPreferences getConfigurationPreferences(Context context) {
         return context.getSharedPreferences(
                 context.getString(R.string.shared_prefs_script_configuration),
@@ -156,7 +186,6 @@ public class NeoTree extends MultiDexApplication {
         Realm.init(this);
 
         byte[] encryptionKey = EncryptionKeyStore.generateOrGetRealmEncryptionKey(this);
-        AndroidHelper.bytesToHex(encryptionKey);
 
         mRealmConfiguration = new RealmConfiguration.Builder()
                 .name("neotree.realm")
@@ -167,6 +196,13 @@ public class NeoTree extends MultiDexApplication {
         Realm.setDefaultConfiguration(mRealmConfiguration);
     }
 
+    private void configureCaches() {
+        ScriptCache.get().initialize(new File(getFilesDir(), "scripts"));
+        ImageBlobStore.get().initialize(new File(getFilesDir(), "blobs"));
+        ImageLoader.initialize(new File(getCacheDir(), "images"));
+        MetricsRegistry.get().initialize(new File(getFilesDir(), "metrics.json"));
+    }
+
     public RealmConfiguration getRealmConfiguration() {
         return mRealmConfiguration;
     }
@@ -3,14 +3,13 @@ package org.neotree.diagnosis;
 import android.text.TextUtils;
 import android.util.Log;
 
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.neotree.diagnosis.type.SymptomType;
 import org.neotree.model.firebase.Diagnosis;
 import org.neotree.model.firebase.Symptom;
-import org.neotree.grammar.BooleanExpressionLexer;
 import org.neotree.grammar.BooleanExpressionParser;
+import org.neotree.player.expression.ExpressionCache;
+import org.neotree.support.metrics.MetricsRegistry;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,6 +35,8 @@ public class Doctor {
             return null;
         }
 
+        final long start = MetricsRegistry.startTimer();
+
         // Clean before starting
         data.remove(RISK_COUNT);
         data.remove(SIGN_COUNT);
@@ -93,19 +94,19 @@ public class Doctor {
             data.remove(RISK_COUNT);
             data.remove(SIGN_COUNT);
         }
+        MetricsRegistry.get().stopTimer("doctor.diagnose", start);
         return result;
     }
 
     private static boolean evaluateExpression(String diagnosisName, String signName, String expression, Map<String, Object> data) throws DiagnosisException {
 //        Log.w(TAG, expression);
         try {
-            BooleanExpressionLexer lexer = new BooleanExpressionLexer(new ANTLRInputStream(expression.trim()));
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
-            BooleanExpressionParser parser = new BooleanExpressionParser(tokens);
-            BooleanExpressionParser.RootContext tree = parser.root();
+            BooleanExpressionParser.RootContext tree = ExpressionCache.parse(expression);
 
+            final long start = MetricsRegistry.startTimer();
             DiagnosisExpressionEvaluator evaluator = new DiagnosisExpressionEvaluator(data);
             ParseTreeWalker.DEFAULT.walk(evaluator, tree);
+            MetricsRegistry.get().stopTimer("expression.evaluate", start);
 
             return evaluator.getEvaluationResult();
         } catch (Exception e) {
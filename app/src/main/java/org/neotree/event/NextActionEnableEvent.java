@@ -25,9 +25,11 @@ package org.neotree.event;
 public class NextActionEnableEvent {
 
     public boolean enabled;
+    public long sentAt;
 
-    public NextActionEnableEvent(boolean enabled) {
+    public NextActionEnableEvent(boolean enabled, long sentAt) {
         this.enabled = enabled;
+        this.sentAt = sentAt;
     }
 
 }
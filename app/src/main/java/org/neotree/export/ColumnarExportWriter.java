@@ -0,0 +1,363 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.export;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.ISODateTimeFormat;
+import org.neotree.model.realm.SessionValue;
+import org.neotree.player.type.DataType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes session data as a typed, column oriented binary file (one row per session, one column
+ * per script key) so that analytics tools can load it without re-parsing the nested JSON export.
+ *
+ * Layout (big endian, strings are a byte length (int) followed by that many bytes of UTF-8):
+ * <pre>
+ *   magic "NTCOL" | version (int) | row count (int) | column count (int)
+ *   for each column:
+ *     name (string) | column type (byte) | validity bitmap (ceil(rows / 8) bytes, LSB first)
+ *     BOOL:      one byte per row
+ *     FLOAT64:   one double per row
+ *     TIMESTAMP: one long per row (epoch millis, UTC)
+ *     DICTIONARY: dictionary size (int) | dictionary entries (string) | one int index per row
+ *     UTF8:      one string per row (empty for null rows)
+ * </pre>
+ */
+public class ColumnarExportWriter {
+
+    public static final String FILE_EXTENSION = "ntcol";
+
+    private static final byte[] MAGIC = { 'N', 'T', 'C', 'O', 'L' };
+    private static final int VERSION = 2;
+
+    private static final byte TYPE_BOOL = 1;
+    private static final byte TYPE_FLOAT64 = 2;
+    private static final byte TYPE_TIMESTAMP = 3;
+    private static final byte TYPE_DICTIONARY = 4;
+    private static final byte TYPE_UTF8 = 5;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<String> mNames;
+    private final Column[] mColumns;
+    private int mRowCount = 0;
+
+    public ColumnarExportWriter(List<String> names, List<DataType> types) {
+        if (names.size() != types.size()) {
+            throw new IllegalArgumentException("Column names and types must have the same size");
+        }
+        mNames = new ArrayList<>(names);
+        mColumns = new Column[names.size()];
+        for (int i = 0; i < mColumns.length; i++) {
+            mColumns[i] = createColumn(types.get(i));
+        }
+    }
+
+    /**
+     * Starts a new row, all cells are null until a value is set.
+     */
+    public void nextRow() {
+        mRowCount++;
+        for (Column column : mColumns) {
+            column.ensureCapacity(mRowCount);
+        }
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public void setValue(int columnIndex, SessionValue value) {
+        checkRow();
+        if (value == null) {
+            return;
+        }
+        mColumns[columnIndex].set(mRowCount - 1, value);
+    }
+
+    /**
+     * Marks a boolean cell as true (used for multiple selection items and checklists, where only
+     * the selected items are stored).
+     */
+    public void setFlag(int columnIndex) {
+        checkRow();
+        Column column = mColumns[columnIndex];
+        if (column instanceof BoolColumn) {
+            ((BoolColumn) column).setBoolean(mRowCount - 1, true);
+        }
+    }
+
+    public void write(File file) throws IOException {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mRowCount);
+            out.writeInt(mColumns.length);
+
+            for (int i = 0; i < mColumns.length; i++) {
+                final Column column = mColumns[i];
+                writeString(out, mNames.get(i));
+                out.writeByte(column.type());
+                out.write(column.validity, 0, (mRowCount + 7) / 8);
+                column.writeValues(out, mRowCount);
+            }
+            out.flush();
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    // Free text answers can be longer than the 64 KB writeUTF() allows
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void checkRow() {
+        if (mRowCount == 0) {
+            throw new IllegalStateException("nextRow() must be called before setting values");
+        }
+    }
+
+    private static Column createColumn(DataType dataType) {
+        if (dataType == null) {
+            return new Utf8Column();
+        }
+        switch (dataType) {
+            case BOOLEAN:
+                return new BoolColumn();
+            case NUMBER:
+                return new Float64Column();
+            case DATE:
+            case DATETIME:
+            case TIME:
+                return new TimestampColumn();
+            case ID:
+            case SET_ID:
+                return new DictionaryColumn();
+            default:
+                return new Utf8Column();
+        }
+    }
+
+    private static abstract class Column {
+        byte[] validity = new byte[(INITIAL_CAPACITY + 7) / 8];
+        int capacity = INITIAL_CAPACITY;
+
+        abstract byte type();
+        abstract void grow(int capacity);
+        abstract void set(int row, SessionValue value);
+        abstract void writeValues(DataOutputStream out, int rowCount) throws IOException;
+
+        void ensureCapacity(int rowCount) {
+            if (rowCount > capacity) {
+                int newCapacity = Math.max(capacity * 2, rowCount);
+                validity = Arrays.copyOf(validity, (newCapacity + 7) / 8);
+                grow(newCapacity);
+                capacity = newCapacity;
+            }
+        }
+
+        void markValid(int row) {
+            validity[row >> 3] |= (1 << (row & 7));
+        }
+    }
+
+    private static class BoolColumn extends Column {
+        private byte[] mValues = new byte[INITIAL_CAPACITY];
+
+        @Override
+        byte type() {
+            return TYPE_BOOL;
+        }
+
+        @Override
+        void grow(int capacity) {
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+
+        @Override
+        void set(int row, SessionValue value) {
+            if (value.getBooleanValue() != null) {
+                setBoolean(row, value.getBooleanValue());
+            }
+        }
+
+        void setBoolean(int row, boolean value) {
+            mValues[row] = (byte) ((value) ? 1 : 0);
+            markValid(row);
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rowCount) throws IOException {
+            out.write(mValues, 0, rowCount);
+        }
+    }
+
+    private static class Float64Column extends Column {
+        private double[] mValues = new double[INITIAL_CAPACITY];
+
+        @Override
+        byte type() {
+            return TYPE_FLOAT64;
+        }
+
+        @Override
+        void grow(int capacity) {
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+
+        @Override
+        void set(int row, SessionValue value) {
+            if (value.getDoubleValue() != null) {
+                mValues[row] = value.getDoubleValue();
+                markValid(row);
+            }
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rowCount) throws IOException {
+            for (int i = 0; i < rowCount; i++) {
+                out.writeDouble(mValues[i]);
+            }
+        }
+    }
+
+    private static class TimestampColumn extends Column {
+        private long[] mValues = new long[INITIAL_CAPACITY];
+
+        @Override
+        byte type() {
+            return TYPE_TIMESTAMP;
+        }
+
+        @Override
+        void grow(int capacity) {
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+
+        @Override
+        void set(int row, SessionValue value) {
+            if (value.getStringValue() != null) {
+                mValues[row] = DateTime.parse(value.getStringValue(), ISODateTimeFormat.dateTimeNoMillis()).getMillis();
+                markValid(row);
+            }
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rowCount) throws IOException {
+            for (int i = 0; i < rowCount; i++) {
+                out.writeLong(mValues[i]);
+            }
+        }
+    }
+
+    private static class DictionaryColumn extends Column {
+        private final Map<String, Integer> mIndex = new HashMap<>();
+        private final List<String> mDictionary = new ArrayList<>();
+        private int[] mValues = new int[INITIAL_CAPACITY];
+
+        @Override
+        byte type() {
+            return TYPE_DICTIONARY;
+        }
+
+        @Override
+        void grow(int capacity) {
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+
+        @Override
+        void set(int row, SessionValue value) {
+            final String key = value.getStringValue();
+            if (key == null) {
+                return;
+            }
+            Integer index = mIndex.get(key);
+            if (index == null) {
+                index = mDictionary.size();
+                mDictionary.add(key);
+                mIndex.put(key, index);
+            }
+            mValues[row] = index;
+            markValid(row);
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rowCount) throws IOException {
+            out.writeInt(mDictionary.size());
+            for (String entry : mDictionary) {
+                writeString(out, entry);
+            }
+            for (int i = 0; i < rowCount; i++) {
+                out.writeInt(mValues[i]);
+            }
+        }
+    }
+
+    private static class Utf8Column extends Column {
+        private String[] mValues = new String[INITIAL_CAPACITY];
+
+        @Override
+        byte type() {
+            return TYPE_UTF8;
+        }
+
+        @Override
+        void grow(int capacity) {
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+
+        @Override
+        void set(int row, SessionValue value) {
+            if (value.getStringValue() != null) {
+                mValues[row] = value.getStringValue();
+                markValid(row);
+            }
+        }
+
+        @Override
+        void writeValues(DataOutputStream out, int rowCount) throws IOException {
+            for (int i = 0; i < rowCount; i++) {
+                writeString(out, (mValues[i] != null) ? mValues[i] : "");
+            }
+        }
+    }
+
+}
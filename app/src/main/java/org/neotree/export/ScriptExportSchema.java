@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.export;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.neotree.model.firebase.Field;
+import org.neotree.model.firebase.Item;
+import org.neotree.model.firebase.Metadata;
+import org.neotree.model.firebase.Screen;
+import org.neotree.model.firebase.Script;
+import org.neotree.player.type.DataType;
+import org.neotree.player.type.ScreenType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column layout of a script for data export: every screen, field and item key mapped to a column
+ * index, a data type and a confidentiality flag.
+ *
+ * The schema only depends on the script definition, so it is built once per script version and
+ * cached; use {@link #forScript(Script, List)} instead of building it on each export.
+ */
+public class ScriptExportSchema {
+
+    private static final String TAG = ScriptExportSchema.class.getSimpleName();
+
+    private static final Map<String, ScriptExportSchema> sCache = new HashMap<>();
+
+    public static class Column {
+        public final String key;
+        public final int index;
+        public final DataType dataType;
+        public final boolean confidential;
+
+        Column(String key, int index, DataType dataType, boolean confidential) {
+            this.key = key;
+            this.index = index;
+            this.dataType = dataType;
+            this.confidential = confidential;
+        }
+    }
+
+    /**
+     * Returns the cached schema for the script, building it if the script (or any of its
+     * screens) has been updated since the schema was last built.
+     */
+    public static ScriptExportSchema forScript(Script script, List<Screen> screens) {
+        final long version = computeVersion(script, screens);
+        synchronized (sCache) {
+            ScriptExportSchema schema = sCache.get(script.scriptId);
+            if (schema == null || schema.mVersion != version) {
+                schema = new ScriptExportSchema(script.scriptId, version, screens);
+                sCache.put(script.scriptId, schema);
+            }
+            return schema;
+        }
+    }
+
+    public static void invalidate(String scriptId) {
+        synchronized (sCache) {
+            sCache.remove(scriptId);
+        }
+    }
+
+    private final String mScriptId;
+    private final long mVersion;
+    private final List<Column> mColumns;
+    private final Map<String, Column> mColumnMap;
+    private final List<String> mHeaders;
+    private final List<DataType> mTypes;
+
+    private ScriptExportSchema(String scriptId, long version, List<Screen> screens) {
+        mScriptId = scriptId;
+        mVersion = version;
+
+        final ArrayList<Column> columns = new ArrayList<>();
+        final HashMap<String, Column> columnMap = new HashMap<>();
+        final ArrayList<String> headers = new ArrayList<>();
+        final ArrayList<DataType> types = new ArrayList<>();
+
+        for (int screenIndex = 0; screens != null && screenIndex < screens.size(); screenIndex++) {
+            final Screen screen = screens.get(screenIndex);
+            final ScreenType screenType = ScreenType.fromString(screen.type);
+            final Metadata metadata = screen.metadata;
+            if (metadata == null) {
+                continue;
+            }
+
+            // Map screen keys
+            String screenKey = (TextUtils.isEmpty(metadata.key)) ? null : metadata.key.trim();
+            if (screenKey != null) {
+                if (screenType == ScreenType.MULTI_SELECT) {
+                    for (int itemIndex = 0; metadata.items != null && itemIndex < metadata.items.size(); itemIndex++) {
+                        final Item item = metadata.items.get(itemIndex);
+                        addColumn(columns, columnMap, headers, types, String.format("%s_%s", screenKey, item.id),
+                                DataType.BOOLEAN, metadata.confidential);
+                    }
+                } else {
+                    addColumn(columns, columnMap, headers, types, screenKey,
+                            DataType.fromString(metadata.dataType), metadata.confidential);
+                }
+
+                if (!metadata.confidential) {
+                    continue;
+                }
+            }
+
+            if (screenType == ScreenType.FORM) {
+                // Map field keys
+                for (int fieldIndex = 0; metadata.fields != null && fieldIndex < metadata.fields.size(); fieldIndex++) {
+                    final Field field = metadata.fields.get(fieldIndex);
+                    String fieldKey = (TextUtils.isEmpty(field.key)) ? null : field.key.trim();
+                    if (fieldKey != null) {
+                        addColumn(columns, columnMap, headers, types, fieldKey,
+                                DataType.fromString(field.dataType), field.confidential);
+                    }
+                }
+            } else if (screenType == ScreenType.CHECKLIST) {
+                // Map item keys
+                for (int itemIndex = 0; metadata.items != null && itemIndex < metadata.items.size(); itemIndex++) {
+                    final Item item = metadata.items.get(itemIndex);
+                    String itemKey = (TextUtils.isEmpty(item.key)) ? null : item.key.trim();
+                    if (itemKey != null) {
+                        addColumn(columns, columnMap, headers, types, itemKey,
+                                DataType.BOOLEAN, item.confidential);
+                    }
+                }
+            }
+        }
+
+        mColumns = Collections.unmodifiableList(columns);
+        mColumnMap = Collections.unmodifiableMap(columnMap);
+        mHeaders = Collections.unmodifiableList(headers);
+        mTypes = Collections.unmodifiableList(types);
+
+        Log.d(TAG, String.format("Built export schema [scriptId=%s, version=%d, columns=%d, exported=%d]",
+                scriptId, version, columns.size(), headers.size()));
+    }
+
+    /**
+     * Confidential columns are recorded with index -1, so that only non confidential data ends
+     * up in exported files. A key mapped more than once keeps its first column.
+     */
+    private static void addColumn(List<Column> columns, Map<String, Column> columnMap, List<String> headers,
+                                  List<DataType> types, String key, DataType dataType, boolean confidential) {
+        if (columnMap.containsKey(key)) {
+            Log.w(TAG, String.format("Duplicate export key, keeping the first mapping [key=%s]", key));
+            return;
+        }
+        final int index = (confidential) ? -1 : headers.size();
+        final Column column = new Column(key, index, dataType, confidential);
+        columns.add(column);
+        columnMap.put(key, column);
+        if (!confidential) {
+            headers.add(key);
+            types.add(dataType);
+        }
+    }
+
+    private static long computeVersion(Script script, List<Screen> screens) {
+        long version = (script.updatedAt != null) ? script.updatedAt : 0;
+        for (int i = 0; screens != null && i < screens.size(); i++) {
+            final Long updatedAt = screens.get(i).updatedAt;
+            if (updatedAt != null && updatedAt > version) {
+                version = updatedAt;
+            }
+        }
+        // Screens added or removed without an updated timestamp still change the schema
+        return version * 31 + ((screens != null) ? screens.size() : 0);
+    }
+
+    public String getScriptId() {
+        return mScriptId;
+    }
+
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * All mapped columns, including confidential ones.
+     */
+    public List<Column> getColumns() {
+        return mColumns;
+    }
+
+    public Column getColumn(String key) {
+        return mColumnMap.get(key);
+    }
+
+    /**
+     * Returns the export column index for a key, or -1 if the key is unknown or confidential.
+     */
+    public int getColumnIndex(String key) {
+        final Column column = mColumnMap.get(key);
+        return (column != null) ? column.index : -1;
+    }
+
+    public boolean isConfidential(String key) {
+        final Column column = mColumnMap.get(key);
+        return (column != null && column.confidential);
+    }
+
+    /**
+     * Header names of the exported (non confidential) columns, in column order.
+     */
+    public List<String> getHeaders() {
+        return mHeaders;
+    }
+
+    /**
+     * Data types of the exported (non confidential) columns, in column order.
+     */
+    public List<DataType> getTypes() {
+        return mTypes;
+    }
+
+    public int getColumnCount() {
+        return mHeaders.size();
+    }
+
+}
@@ -26,10 +26,11 @@ import org.neotree.model.firebase.Diagnosis;
 import org.neotree.model.realm.Session;
 import org.neotree.model.realm.SessionEntry;
 import org.neotree.support.datastore.RealmStore;
+import org.neotree.support.rx.data.Pair;
 
 import java.util.List;
 
-import io.realm.Realm;
+import rx.Observable;
 
 /**
  * Created by matteo on 22/09/2016.
@@ -37,10 +38,20 @@ import io.realm.Realm;
 
 public class SummaryExportManager {
 
-    public static void print(Context context, Realm realm, String sessionId, List<SessionEntry> entries, List<Diagnosis> diagnoses) {
-        Session session = RealmStore.loadSession(realm, sessionId);
-        PrintManager printManager = (PrintManager) context.getSystemService(Context.PRINT_SERVICE);
-        printManager.print(sessionId, new SummaryPrintDocumentAdapter(context, session, entries, diagnoses), null);
+    /**
+     * Loads the session and its entries in the background, then starts the print job on the main thread.
+     */
+    public static Observable<Session> print(Context context, String sessionId, boolean confidential, List<Diagnosis> diagnoses) {
+        return Observable.zip(RealmStore.loadSessionAsync(sessionId),
+                RealmStore.loadEntriesForSessionAsync(sessionId, confidential),
+                (session, entries) -> new Pair<>(session, entries))
+                .map(data -> {
+                    final Session session = data.getValue1();
+                    final List<SessionEntry> entries = data.getValue2();
+                    PrintManager printManager = (PrintManager) context.getSystemService(Context.PRINT_SERVICE);
+                    printManager.print(sessionId, new SummaryPrintDocumentAdapter(context, session, entries, diagnoses), null);
+                    return session;
+                });
     }
 
 }
@@ -24,9 +24,9 @@ import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.pdf.PdfDocument;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.CancellationSignal;
+import android.os.HandlerThread;
 import android.os.ParcelFileDescriptor;
 import android.print.PageRange;
 import android.print.PrintAttributes;
@@ -35,6 +35,7 @@ import android.print.PrintDocumentInfo;
 import android.print.pdf.PrintedPdfDocument;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -53,6 +54,7 @@ import org.neotree.diagnosis.Doctor;
 import org.neotree.model.firebase.Diagnosis;
 import org.neotree.model.realm.Session;
 import org.neotree.model.realm.SessionEntry;
+import org.neotree.support.android.Logger;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -61,9 +63,18 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Scheduler;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
 
 /**
  * Created by matteo on 22/09/2016.
+ *
+ * Layout and rendering run on a dedicated print thread, which is the only one touching the views.
+ * One view per view type is recycled for measuring and drawing. The page breaks found by onLayout
+ * are kept, so onWrite only binds and draws the entries of the requested pages.
  */
 
 public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
@@ -82,7 +93,7 @@ public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
 
     private Context mPrintContext;
     private PrintAttributes mPrintAttributes;
-    private PrintDocumentInfo mPrintDocumentInfo;
+    private volatile PrintDocumentInfo mPrintDocumentInfo;
 
     private int mDensity;
     private int mRenderPageMarginTop;
@@ -93,6 +104,19 @@ public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
     private int mRenderPageHeight;
     private int mPageCount;
 
+    private HandlerThread mPrintThread;
+    private Scheduler.Worker mPrintWorker;
+    private volatile PageLayout mPageLayout;
+
+    // Print thread only
+    private Context mViewContext;
+    private SessionEntryViewAdapter mViewAdapter;
+    private LinearLayout mMeasureParent;
+    private LinearLayout mPageView;
+    private LinearLayout[] mColumnViews;
+    private View mSectionView;
+    private final SparseArray<View> mScrapViews = new SparseArray<>();
+
     public SummaryPrintDocumentAdapter(Context context, Session session, List<SessionEntry> entries, List<Diagnosis> diagnoses) {
         mContext = context;
         mSession = session;
@@ -100,6 +124,19 @@ public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
         mDiagnosisList = diagnoses;
     }
 
+    @Override
+    public void onStart() {
+        mPrintThread = new HandlerThread(TAG);
+        mPrintThread.start();
+        mPrintWorker = AndroidSchedulers.from(mPrintThread.getLooper()).createWorker();
+    }
+
+    @Override
+    public void onFinish() {
+        mPrintWorker.unsubscribe();
+        mPrintThread.quitSafely();
+    }
+
     @Override
     public void onLayout(PrintAttributes oldAttributes, PrintAttributes newAttributes, CancellationSignal cancellationSignal, LayoutResultCallback callback, Bundle metadata) {
         // If we are already cancelled, don't do any work.
@@ -108,28 +145,14 @@ public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
             return;
         }
 
-        boolean layoutNeeded = false;
-
         mDensity = Math.max(newAttributes.getResolution().getHorizontalDpi(), newAttributes.getResolution().getVerticalDpi());
         mRenderPageMarginLeft = (int) (mDensity * (float) newAttributes.getMinMargins().getLeftMils() / MILS_IN_INCH);
         mRenderPageMarginRight = (int) (mDensity * (float) newAttributes.getMinMargins().getRightMils() / MILS_IN_INCH);
-
-        final int contentWidth = (int) (mDensity * (float) newAttributes.getMediaSize().getWidthMils() / MILS_IN_INCH) - mRenderPageMarginLeft - mRenderPageMarginRight;
-
-        if (mRenderPageWidth != contentWidth) {
-            mRenderPageWidth = contentWidth;
-            layoutNeeded = true;
-        }
+        mRenderPageWidth = (int) (mDensity * (float) newAttributes.getMediaSize().getWidthMils() / MILS_IN_INCH) - mRenderPageMarginLeft - mRenderPageMarginRight;
 
         mRenderPageMarginTop = (int) (mDensity * (float) newAttributes.getMinMargins().getTopMils() / MILS_IN_INCH);
         mRenderPageMarginBottom = (int) (mDensity * (float) newAttributes.getMinMargins().getBottomMils() / MILS_IN_INCH);
-
-        final int contentHeight = (int) (mDensity * (float) newAttributes.getMediaSize().getHeightMils() / MILS_IN_INCH) - mRenderPageMarginTop - mRenderPageMarginBottom;
-
-        if (mRenderPageHeight != contentHeight) {
-            mRenderPageHeight = contentHeight;
-            layoutNeeded = true;
-        }
+        mRenderPageHeight = (int) (mDensity * (float) newAttributes.getMediaSize().getHeightMils() / MILS_IN_INCH) - mRenderPageMarginTop - mRenderPageMarginBottom;
 
         if (mPrintContext == null || mPrintContext.getResources().getConfiguration().densityDpi != mDensity) {
             Configuration configuration = new Configuration();
@@ -138,197 +161,56 @@ public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
             mPrintContext.setTheme(android.R.style.Theme_Holo_Light);
         }
 
-        if (!layoutNeeded) {
+        // Stash the attributes as we will need them for rendering.
+        mPrintAttributes = newAttributes;
+
+        // Page breaks only depend on the render size
+        final PageLayout current = mPageLayout;
+        if (current != null && current.matches(mDensity, mRenderPageWidth, mRenderPageHeight)) {
             callback.onLayoutFinished(mPrintDocumentInfo, false);
             return;
         }
 
+        final Context printContext = mPrintContext;
+        final int density = mDensity;
+        final int width = mRenderPageWidth;
+        final int height = mRenderPageHeight;
+        final AtomicBoolean done = new AtomicBoolean();
+        final Subscription job = mPrintWorker.schedule(() -> {
+            try {
+                final PageLayout layout = computeLayout(printContext, density, width, height, cancellationSignal);
+                if (layout == null) {
+                    // Cancelled, reported by the cancel listener
+                    return;
+                }
 
-        final LayoutInflater layoutInflater = LayoutInflater.from(mPrintContext);
-
-        new AsyncTask<Void, Void, PrintDocumentInfo>() {
-            @Override
-            protected void onPreExecute() {
-                // First register for cancellation requests.
-                cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
-                    @Override
-                    public void onCancel() {
-                        cancel(true);
-                    }
-                });
-                // Stash the attributes as we will need them for rendering.
-                mPrintAttributes = newAttributes;
-            }
-
-            @SuppressWarnings("WrongThread")
-            @Override
-            protected PrintDocumentInfo doInBackground(Void... params) {
-                // Run diagnose once and cache the result
-                mDiagnosisResult = diagnose();
-
-                final SessionEntryViewAdapter adapter = new SessionEntryViewAdapter(new ArrayList<>(mEntries), mDiagnosisResult, layoutInflater);
-
-                // Stash the attributes as we will need them for rendering.
-                mPrintAttributes = newAttributes;
-
-                // Calculate the layout
-                try {
-                    LinearLayout dummyParent = new LinearLayout(mPrintContext);
-                    dummyParent.setOrientation(LinearLayout.VERTICAL);
-
-                    int currentPage = 0;
-                    int currentColumn = 0;
-                    int columnRenderHeight = 0;
-                    int columnContentHeight = 0;
-                    boolean isPageOverflow = false;
-                    boolean isColumnOverflow = false;
-
-                    View pageView = null;
-                    View sectionView;
-                    View entryView;
-
-                    LinearLayout columnView = null;
-                    ArrayList<LinearLayout> columnViews = null;
-
-                    SessionEntry entry;
-                    String lastSectionTitle = null;
-
-                    final int itemCount = adapter.getCount();
-                    for (int i = 0; i < itemCount; i++) {
-                        // Be nice and respond to cancellation.
-                        if (cancellationSignal.isCanceled()) {
-                            callback.onLayoutCancelled();
-                            return null;
-                        }
-
-                        entry = (SessionEntry) adapter.getItem(i);
-
-                        // Create the first page
-                        if (pageView == null) {
-                            pageView = createPageView(layoutInflater, dummyParent, currentPage);
-
-                            final View leftColumn = pageView.findViewById(R.id.pdf_page_body_left);
-                            final View rightColumn = pageView.findViewById(R.id.pdf_page_body_right);
-
-                            columnViews = new ArrayList<>();
-                            columnViews.add((LinearLayout) leftColumn);
-                            columnViews.add((LinearLayout) rightColumn);
-
-                            currentColumn = 0;
-
-                            columnView = columnViews.get(currentColumn);
-                            columnRenderHeight = columnView.getMeasuredHeight() - columnView.getPaddingTop() - columnView.getPaddingBottom();
-                            columnContentHeight = 0;
-                        }
-
-                        // Create a new section if required
-                        String entrySectionTitle = null;
-                        boolean isSectionChanged = false;
-                        if (entry != null) {
-                            entrySectionTitle = (entry.getSectionTitle() != null) ? entry.getSectionTitle().trim() : "Generic answer section";
-                            isSectionChanged = lastSectionTitle == null || !lastSectionTitle.equalsIgnoreCase(entrySectionTitle);
-                            if (lastSectionTitle == null | isSectionChanged) {
-                                lastSectionTitle = entrySectionTitle;
-                            }
-                        }
-
-                        sectionView = null;
-                        if (isSectionChanged) {
-                            sectionView = createSectionView(layoutInflater, dummyParent, entrySectionTitle);
-                            measureView(sectionView, columnView.getMeasuredWidth(), columnView.getMeasuredHeight());
-                        }
-
-                        // Get and measure the next entry view
-                        entryView = adapter.getView(i, null, dummyParent);
-                        measureView(entryView, columnView.getMeasuredWidth(), columnView.getMeasuredHeight());
-
-                        // Check we can fit the entry in the current column
-                        if (sectionView != null) {
-                            isColumnOverflow = (columnContentHeight + sectionView.getMeasuredHeight() + entryView.getMeasuredHeight() > columnRenderHeight);
-                        } else {
-                            isColumnOverflow = (columnContentHeight + entryView.getMeasuredHeight() > columnRenderHeight);
-                        }
-
-                        // Check if we have a page overflow
-                        isPageOverflow = isColumnOverflow && (currentColumn == columnViews.size() - 1);
-
-                        if (isPageOverflow) {
-                            // Increment page counter
-                            currentPage++;
-
-                            // Move content to the first columnt of the next page
-                            pageView = createPageView(layoutInflater, dummyParent, currentPage);
-
-                            final View leftColumn = pageView.findViewById(R.id.pdf_page_body_left);
-                            final View rightColumn = pageView.findViewById(R.id.pdf_page_body_right);
-
-                            columnViews = new ArrayList<>();
-                            columnViews.add((LinearLayout) leftColumn);
-                            columnViews.add((LinearLayout) rightColumn);
-
-                            currentColumn = 0;
-
-                            columnView = columnViews.get(currentColumn);
-                            columnRenderHeight = columnView.getMeasuredHeight() - columnView.getPaddingTop() - columnView.getPaddingBottom();
-                            columnContentHeight = 0;
-                            if (sectionView != null) {
-                                columnContentHeight += sectionView.getMeasuredHeight();
-                            }
-                            columnContentHeight += entryView.getMeasuredHeight();
-                        } else {
-                            if (isColumnOverflow) {
-                                // Move content to the next column
-                                currentColumn++;
-
-                                columnView = columnViews.get(currentColumn);
-                                columnRenderHeight = columnView.getMeasuredHeight() - columnView.getPaddingTop() - columnView.getPaddingBottom();
-                                columnContentHeight = 0;
-                                if (sectionView != null) {
-                                    columnContentHeight += sectionView.getMeasuredHeight();
-                                }
-                                columnContentHeight += entryView.getMeasuredHeight();
-                            } else {
-                                // Add content to the current column
-                                if (sectionView != null) {
-                                    columnContentHeight += sectionView.getMeasuredHeight();
-                                }
-                                columnContentHeight += entryView.getMeasuredHeight();
-                            }
-                        }
-                    }
-
-                    mPageCount = currentPage + 1;
-
-                    Log.d(TAG, String.format("Pdf layout completed. Total pages [count=%d]", mPageCount));
-
-                    // Create a document info describing the result.
-                    PrintDocumentInfo info = new PrintDocumentInfo
-                            .Builder(String.format(Locale.getDefault(), "%s.pdf", mSession.getSessionId()))
-                            .setContentType(PrintDocumentInfo.CONTENT_TYPE_DOCUMENT)
-                            .setPageCount(mPageCount)
-                            .build();
+                mPageLayout = layout;
+                mPageCount = layout.getPageCount();
+                Logger.d(TAG, "Pdf layout completed. Total pages [count=%d]", mPageCount);
 
-                    // Notify of layout completed
-                    callback.onLayoutFinished(info, true);
+                // Create a document info describing the result.
+                mPrintDocumentInfo = new PrintDocumentInfo
+                        .Builder(String.format(Locale.getDefault(), "%s.pdf", mSession.getSessionId()))
+                        .setContentType(PrintDocumentInfo.CONTENT_TYPE_DOCUMENT)
+                        .setPageCount(mPageCount)
+                        .build();
 
-                    // Update the print document info
-                    return info;
-                } catch (Exception e) {
-                    callback.onLayoutFailed(null);
-                    throw new RuntimeException(e);
+                if (done.compareAndSet(false, true)) {
+                    callback.onLayoutFinished(mPrintDocumentInfo, true);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error computing pdf layout", e);
+                if (done.compareAndSet(false, true)) {
+                    callback.onLayoutFailed(e.getMessage());
                 }
             }
-
-            @Override
-            protected void onPostExecute(PrintDocumentInfo result) {
-                mPrintDocumentInfo = result;
-            }
-
-            @Override
-            protected void onCancelled(PrintDocumentInfo result) {
+        });
+        cancellationSignal.setOnCancelListener(() -> {
+            job.unsubscribe();
+            if (done.compareAndSet(false, true)) {
                 callback.onLayoutCancelled();
             }
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
+        });
     }
 
     @Override
@@ -339,287 +221,250 @@ public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
             return;
         }
 
-        new AsyncTask<Void, Void, Void>() {
-
-            final SparseIntArray mWrittenPages = new SparseIntArray();
-            final PrintedPdfDocument mPdfDocument = new PrintedPdfDocument(mPrintContext, mPrintAttributes);
+        final Context printContext = mPrintContext;
+        final PrintAttributes printAttributes = mPrintAttributes;
+        final AtomicBoolean done = new AtomicBoolean();
+        final Subscription job = mPrintWorker.schedule(() -> {
+            final PrintedPdfDocument pdfDocument = new PrintedPdfDocument(printContext, printAttributes);
+            try {
+                final PageRange[] writtenPages = writePages(pdfDocument, pages, cancellationSignal);
+                if (writtenPages == null) {
+                    // Cancelled, reported by the cancel listener
+                    return;
+                }
 
-            @Override
-            protected void onPreExecute() {
-                // First register for cancellation requests.
-                cancellationSignal.setOnCancelListener(() -> cancel(true));
+                pdfDocument.writeTo(new FileOutputStream(destination.getFileDescriptor()));
+                if (done.compareAndSet(false, true)) {
+                    callback.onWriteFinished(writtenPages);
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error writing pdf document", e);
+                if (done.compareAndSet(false, true)) {
+                    callback.onWriteFailed(e.getMessage());
+                }
+            } finally {
+                pdfDocument.close();
             }
+        });
+        cancellationSignal.setOnCancelListener(() -> {
+            job.unsubscribe();
+            if (done.compareAndSet(false, true)) {
+                callback.onWriteCancelled();
+            }
+        });
+    }
 
-            @SuppressWarnings("WrongThread")
-            @Override
-            protected Void doInBackground(Void... params) {
-                // The content is laid out and rendered in screen pixels with the width and height of the
-                // paper size times the print density but the PDF canvas size is in points which are 1/72",
-                // so we will scale down the content.
-                final float scale = Math.min(
-                        (float) mPdfDocument.getPageContentRect().width() / mRenderPageWidth,
-                        (float) mPdfDocument.getPageContentRect().height() / mRenderPageHeight);
-
-                final LayoutInflater layoutInflater = LayoutInflater.from(mPrintContext);
-                final SessionEntryViewAdapter adapter = new SessionEntryViewAdapter(mEntries, mDiagnosisResult, layoutInflater);
-
-                PdfDocument.Page pdfPage = null;
-                ArrayList<View> pageViews = new ArrayList<>();
-
-                LinearLayout dummyParent = new LinearLayout(mPrintContext);
-                dummyParent.setOrientation(LinearLayout.VERTICAL);
-
-                int currentPage = 0;
-                int currentColumn = 0;
-                int columnRenderHeight = 0;
-                int columnContentHeight = 0;
-                boolean isPageOverflow = false;
-                boolean isColumnOverflow = false;
-
-                View pageView = null;
-                View sectionView = null;
-                View entryView = null;
-
-                LinearLayout columnView = null;
-                ArrayList<LinearLayout> columnViews = null;
-
-                SessionEntry entry;
-                String lastSectionTitle = null;
-
-                final int itemCount = adapter.getCount();
-                Log.d(TAG, String.format("Total items [count=%d]", itemCount));
-
-                for (int i = 0; i < itemCount; i++) {
-                    // Be nice and respond to cancellation.
-                    if (cancellationSignal.isCanceled()) {
-                        callback.onWriteCancelled();
-                        return null;
-                    }
-
-                    final boolean isFirstItem = (i == 0);
-                    entry = (SessionEntry) adapter.getItem(i);
-
-                    // Create the first page
-                    if (pageView == null) {
-                        pageView = createPageView(layoutInflater, dummyParent, currentPage);
-
-                        final View leftColumn = pageView.findViewById(R.id.pdf_page_body_left);
-                        final View rightColumn = pageView.findViewById(R.id.pdf_page_body_right);
-
-                        columnViews = new ArrayList<>();
-                        columnViews.add((LinearLayout) leftColumn);
-                        columnViews.add((LinearLayout) rightColumn);
-
-                        currentColumn = 0;
-
-                        columnView = columnViews.get(currentColumn);
-                        columnRenderHeight = columnView.getMeasuredHeight() - columnView.getPaddingTop() - columnView.getPaddingBottom();
-                        columnContentHeight = 0;
-                    }
-
-                    // Create a new section if required
-                    String entrySectionTitle = null;
-                    boolean isSectionChanged = false;
-                    if (entry != null) {
-                        entrySectionTitle = (entry.getSectionTitle() != null) ? entry.getSectionTitle().trim() : "Generic answer section";
-                        isSectionChanged = lastSectionTitle == null || !lastSectionTitle.equalsIgnoreCase(entrySectionTitle);
-                        if (lastSectionTitle == null | isSectionChanged) {
-                            lastSectionTitle = entrySectionTitle;
-                        }
-                    }
-
-                    sectionView = null;
-                    if (isSectionChanged) {
-                        sectionView = createSectionView(layoutInflater, dummyParent, entrySectionTitle);
-                        measureView(sectionView, columnView.getMeasuredWidth(), columnView.getMeasuredHeight());
-                    }
-
-                    // Get and measure the next entry view
-                    entryView = adapter.getView(i, null, dummyParent);
-                    measureView(entryView, columnView.getMeasuredWidth(), columnView.getMeasuredHeight());
+    /**
+     * Measures every entry once to find the column and page breaks, returns null if cancelled.
+     */
+    private PageLayout computeLayout(Context printContext, int density, int width, int height, CancellationSignal cancellationSignal) {
+        prepareViews(printContext);
 
-                    // Check we can fit the entry in the current column
-                    if (sectionView != null) {
-                        isColumnOverflow = (columnContentHeight + sectionView.getMeasuredHeight() + entryView.getMeasuredHeight() > columnRenderHeight);
-                    } else {
-                        isColumnOverflow = (columnContentHeight + entryView.getMeasuredHeight() > columnRenderHeight);
-                    }
+        final int itemCount = mViewAdapter.getCount();
+        final PageLayout layout = new PageLayout(density, width, height, itemCount);
 
-                    // Check if we have a page overflow
-                    isPageOverflow = isColumnOverflow && (currentColumn == columnViews.size() - 1);
+        int currentPage = 0;
+        int currentColumn = 0;
+        int columnContentHeight = 0;
+        String lastSectionTitle = null;
 
-                    if (isPageOverflow) {
-                        currentPage++;
+        bindPageView(currentPage, width, height);
+        int columnRenderHeight = getColumnRenderHeight(currentColumn);
 
-                        // Done with the current page - finish it.
-                        if (pdfPage != null) {
-                            Log.d(TAG, String.format("Finish pdf page at item [i=%d]", i));
-                            finishCurrentPage(pageView, pageViews, pdfPage);
-                            mPdfDocument.finishPage(pdfPage);
-                        }
+        for (int i = 0; i < itemCount; i++) {
+            // Be nice and respond to cancellation.
+            if (cancellationSignal.isCanceled()) {
+                return null;
+            }
 
-                        // Move content to the first columnt of the next page
-                        pageView = createPageView(layoutInflater, dummyParent, currentPage);
+            // Start a new section if required
+            final SessionEntry entry = (SessionEntry) mViewAdapter.getItem(i);
+            String sectionTitle = null;
+            if (entry != null) {
+                final String entrySectionTitle = (entry.getSectionTitle() != null) ? entry.getSectionTitle().trim() : "Generic answer section";
+                if (lastSectionTitle == null || !lastSectionTitle.equalsIgnoreCase(entrySectionTitle)) {
+                    sectionTitle = entrySectionTitle;
+                    lastSectionTitle = entrySectionTitle;
+                }
+            }
 
-                        final View leftColumn = pageView.findViewById(R.id.pdf_page_body_left);
-                        final View rightColumn = pageView.findViewById(R.id.pdf_page_body_right);
+            final LinearLayout columnView = mColumnViews[currentColumn];
+            int sectionHeight = 0;
+            if (sectionTitle != null) {
+                final View sectionView = bindSectionView(sectionTitle);
+                measureView(sectionView, columnView.getMeasuredWidth(), columnView.getMeasuredHeight());
+                sectionHeight = sectionView.getMeasuredHeight();
+            }
 
-                        columnViews = new ArrayList<>();
-                        columnViews.add((LinearLayout) leftColumn);
-                        columnViews.add((LinearLayout) rightColumn);
+            // Get and measure the next entry view
+            final View entryView = bindEntryView(i);
+            measureView(entryView, columnView.getMeasuredWidth(), columnView.getMeasuredHeight());
+            final int entryHeight = entryView.getMeasuredHeight();
+
+            // Move to the next column, or to the first column of the next page, if the entry does not fit
+            if (columnContentHeight + sectionHeight + entryHeight > columnRenderHeight) {
+                if (currentColumn == mColumnViews.length - 1) {
+                    currentPage++;
+                    currentColumn = 0;
+                    bindPageView(currentPage, width, height);
+                    layout.startPage(i);
+                } else {
+                    currentColumn++;
+                }
+                columnRenderHeight = getColumnRenderHeight(currentColumn);
+                columnContentHeight = 0;
+            }
 
-                        currentColumn = 0;
+            layout.place(i, currentColumn, columnContentHeight, sectionTitle);
+            columnContentHeight += sectionHeight + entryHeight;
+        }
+        return layout;
+    }
 
-                        columnView = columnViews.get(currentColumn);
-                        columnRenderHeight = columnView.getMeasuredHeight() - columnView.getPaddingTop() - columnView.getPaddingBottom();
-                        columnContentHeight = 0;
-                        if (sectionView != null) {
-                            sectionView.layout(columnView.getLeft(), columnContentHeight,
-                                    columnView.getLeft() + sectionView.getMeasuredWidth(),
-                                    columnContentHeight + sectionView.getMeasuredHeight());
-                            columnContentHeight += sectionView.getMeasuredHeight();
+    /**
+     * Renders the requested pages only, each page is finished before the next one is drawn.
+     * Returns null if cancelled.
+     */
+    private PageRange[] writePages(PrintedPdfDocument pdfDocument, PageRange[] pages, CancellationSignal cancellationSignal) {
+        final PageLayout layout = mPageLayout;
+        if (layout == null) {
+            throw new IllegalStateException("Pdf write requested before layout");
+        }
 
-                            if (pdfPage != null) {
-                                pageViews.add(sectionView);
-                            }
-                        }
-                        entryView.layout(columnView.getLeft(), columnContentHeight,
-                                columnView.getLeft() + entryView.getMeasuredWidth(),
-                                columnContentHeight + entryView.getMeasuredHeight());
-                        columnContentHeight += entryView.getMeasuredHeight();
+        // The content is laid out and rendered in screen pixels with the width and height of the
+        // paper size times the print density but the PDF canvas size is in points which are 1/72",
+        // so we will scale down the content.
+        final float scale = Math.min(
+                (float) pdfDocument.getPageContentRect().width() / layout.getWidth(),
+                (float) pdfDocument.getPageContentRect().height() / layout.getHeight());
+
+        final SparseIntArray writtenPages = new SparseIntArray();
+        for (int page = 0; page < layout.getPageCount(); page++) {
+            if (!containsPage(pages, page)) {
+                continue;
+            }
 
-                    } else {
-                        if (isColumnOverflow) {
-                            // Move content to the next column
-                            currentColumn++;
-
-                            columnView = columnViews.get(currentColumn);
-                            //columnRenderHeight = columnView.getMeasuredHeight() - columnView.getPaddingTop() - columnView.getPaddingBottom();
-                            columnContentHeight = 0;
-                            if (sectionView != null) {
-                                sectionView.layout(columnView.getLeft(), columnContentHeight,
-                                        columnView.getLeft() + sectionView.getMeasuredWidth(),
-                                        columnContentHeight + sectionView.getMeasuredHeight());
-                                columnContentHeight += sectionView.getMeasuredHeight();
-
-                                if (pdfPage != null) {
-                                    pageViews.add(sectionView);
-                                }
-                            }
-                            entryView.layout(columnView.getLeft(), columnContentHeight,
-                                    columnView.getLeft() + entryView.getMeasuredWidth(),
-                                    columnContentHeight + entryView.getMeasuredHeight());
-                            columnContentHeight += entryView.getMeasuredHeight();
-                        } else {
-                            // Add content to the current column
-                            if (sectionView != null) {
-                                sectionView.layout(columnView.getLeft(), columnContentHeight,
-                                        columnView.getLeft() + sectionView.getMeasuredWidth(),
-                                        columnContentHeight + sectionView.getMeasuredHeight());
-                                columnContentHeight += sectionView.getMeasuredHeight();
-
-                                if (isFirstItem || pdfPage != null) {
-                                    pageViews.add(sectionView);
-                                }
-                            }
-                            entryView.layout(columnView.getLeft(), columnContentHeight,
-                                    columnView.getLeft() + entryView.getMeasuredWidth(),
-                                    columnContentHeight + entryView.getMeasuredHeight());
-                            columnContentHeight += entryView.getMeasuredHeight();
-                        }
-                    }
+            // Be nice and respond to cancellation.
+            if (cancellationSignal.isCanceled()) {
+                return null;
+            }
 
-                    // If the page is requested, create the page for rendering.
-                    if (isFirstItem || isPageOverflow) {
-                        if (containsPage(pages, currentPage)) {
-                            Log.d(TAG, String.format("Create pdf page at item [i=%d]", i));
-                            pdfPage = mPdfDocument.startPage(currentPage);
-                            pdfPage.getCanvas().scale(scale, scale);
-
-                            // Render the pageView
-                            pageView.layout(mRenderPageMarginLeft, mRenderPageMarginTop, pageView.getMeasuredWidth(), pageView.getMeasuredHeight());
-                            pageView.draw(pdfPage.getCanvas());
-
-                            // Keep track which pages are written.
-                            mWrittenPages.append(mWrittenPages.size(), currentPage);
-
-                            if (currentPage > 0) {
-                                pageViews = new ArrayList<>();
-                            }
-                        } else {
-                            pdfPage = null;
-                            pageViews = new ArrayList<>();
-                        }
-                    }
+            Logger.d(TAG, "Create pdf page [page=%d]", page);
+            final PdfDocument.Page pdfPage = pdfDocument.startPage(page);
+            pdfPage.getCanvas().scale(scale, scale);
+            drawPage(pdfPage.getCanvas(), layout, page);
+            pdfDocument.finishPage(pdfPage);
 
-                    // If the current view is on a requested page, add it to the render queue.
-                    if (pdfPage != null) {
-                        pageViews.add(entryView);
-                    }
-                }
+            // Keep track which pages are written.
+            writtenPages.append(writtenPages.size(), page);
+        }
+        return computeWrittenPageRanges(writtenPages);
+    }
 
-                // Done with the last page.
-                if (pdfPage != null) {
-                    Log.d(TAG, "Finish last page");
-                    finishCurrentPage(pageView, pageViews, pdfPage);
-                    mPdfDocument.finishPage(pdfPage);
-                }
+    private void drawPage(Canvas canvas, PageLayout layout, int page) {
+        bindPageView(page, layout.getWidth(), layout.getHeight());
 
-                // Be nice and respond to cancellation.
-                if (cancellationSignal.isCanceled()) {
-                    callback.onWriteCancelled();
-                    return null;
-                }
+        // Entries are placed relative to the columns of the page laid out at the origin
+        final int[] columnLefts = new int[mColumnViews.length];
+        for (int i = 0; i < mColumnViews.length; i++) {
+            columnLefts[i] = mColumnViews[i].getLeft();
+        }
 
-                // Write the data and return success or failure.
-                try {
-                    mPdfDocument.writeTo(new FileOutputStream(destination.getFileDescriptor()));
-                    // Compute which page ranges were written based on the bookkeeping we maintained.
-                    PageRange[] pageRanges = computeWrittenPageRanges(mWrittenPages);
-                    callback.onWriteFinished(pageRanges);
-                } catch (IOException ioe) {
-                    callback.onWriteFailed(null);
-                } finally {
-                    mPdfDocument.close();
-                }
+        // Render the page header and footer
+        mPageView.layout(mRenderPageMarginLeft, mRenderPageMarginTop, mPageView.getMeasuredWidth(), mPageView.getMeasuredHeight());
+        mPageView.draw(canvas);
 
-                return null;
+        // Render all entries for the current page
+        final View bodyContainerView = mPageView.findViewById(R.id.pdf_page_body_container);
+        final int bodyLeft = mPageView.getPaddingLeft() + mPageView.getLeft();
+        final int bodyTop = bodyContainerView.getTop() + mPageView.getPaddingTop();
+        canvas.translate(bodyLeft, bodyTop);
+
+        for (int i = layout.getFirstItem(page); i < layout.getEndItem(page); i++) {
+            final int column = layout.getColumn(i);
+            final LinearLayout columnView = mColumnViews[column];
+            int top = layout.getTop(i);
+
+            final String sectionTitle = layout.getSectionTitle(i);
+            if (sectionTitle != null) {
+                final View sectionView = bindSectionView(sectionTitle);
+                measureView(sectionView, columnView.getMeasuredWidth(), columnView.getMeasuredHeight());
+                drawView(canvas, sectionView, columnLefts[column], top);
+                top += sectionView.getMeasuredHeight();
             }
 
-            @Override
-            protected void onCancelled(Void result) {
-                // Task was cancelled, report that.
-                callback.onWriteCancelled();
-                mPdfDocument.close();
-            }
+            final View entryView = bindEntryView(i);
+            measureView(entryView, columnView.getMeasuredWidth(), columnView.getMeasuredHeight());
+            drawView(canvas, entryView, columnLefts[column], top);
+        }
+    }
 
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
+    private void drawView(Canvas canvas, View view, int left, int top) {
+        view.layout(left, top, left + view.getMeasuredWidth(), top + view.getMeasuredHeight());
+        canvas.save();
+        canvas.translate(left, top);
+        view.draw(canvas);
+        canvas.restore();
     }
 
-    private LinearLayout createPageView(LayoutInflater layoutInflater, ViewGroup parent, int currentPage) {
-        LinearLayout pageView = (LinearLayout) layoutInflater.inflate(R.layout.view_pdf_page, parent, false);
+    /**
+     * (Re)creates the recycled views when the print density changes.
+     */
+    private void prepareViews(Context printContext) {
+        if (mViewContext == printContext) {
+            return;
+        }
 
-        if (currentPage > 0) {
-            pageView.findViewById(R.id.pdf_cover_title).setVisibility(View.GONE);
+        if (ENABLE_DIAGNOSIS_PRINT && mDiagnosisResult == null) {
+            // Run diagnose once and cache the result
+            mDiagnosisResult = diagnose();
         }
-        ((TextView) pageView.findViewById(R.id.pdf_page_session_id)).setText(mSession.getSessionId());
-        ((TextView) pageView.findViewById(R.id.pdf_page_creation_date)).setText(formatDateTime(mPrintContext, mSession.getCreatedAt()));
-        ((TextView) pageView.findViewById(R.id.pdf_page_number)).setText(mPrintContext.getString(R.string.pdf_label_page, currentPage + 1, mPageCount));
+
+        final LayoutInflater layoutInflater = LayoutInflater.from(printContext);
+        mViewContext = printContext;
+        mViewAdapter = new SessionEntryViewAdapter(mEntries, mDiagnosisResult, layoutInflater);
+        mMeasureParent = new LinearLayout(printContext);
+        mMeasureParent.setOrientation(LinearLayout.VERTICAL);
+
+        mPageView = (LinearLayout) layoutInflater.inflate(R.layout.view_pdf_page, mMeasureParent, false);
+        ((TextView) mPageView.findViewById(R.id.pdf_page_session_id)).setText(mSession.getSessionId());
+        ((TextView) mPageView.findViewById(R.id.pdf_page_creation_date)).setText(formatDateTime(printContext, mSession.getCreatedAt()));
+        mColumnViews = new LinearLayout[] {
+                (LinearLayout) mPageView.findViewById(R.id.pdf_page_body_left),
+                (LinearLayout) mPageView.findViewById(R.id.pdf_page_body_right)
+        };
+
+        mSectionView = layoutInflater.inflate(R.layout.view_pdf_section, mMeasureParent, false);
+        mScrapViews.clear();
+    }
+
+    private void bindPageView(int currentPage, int width, int height) {
+        mPageView.findViewById(R.id.pdf_cover_title).setVisibility((currentPage > 0) ? View.GONE : View.VISIBLE);
+        ((TextView) mPageView.findViewById(R.id.pdf_page_number)).setText(mViewContext.getString(R.string.pdf_label_page, currentPage + 1, mPageCount));
 
         final int widthMeasureSpec = ViewGroup.getChildMeasureSpec(
-                View.MeasureSpec.makeMeasureSpec(mRenderPageWidth, View.MeasureSpec.EXACTLY), 0, pageView.getLayoutParams().width);
+                View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY), 0, mPageView.getLayoutParams().width);
         final int heightMeasureSpec = ViewGroup.getChildMeasureSpec(
-                View.MeasureSpec.makeMeasureSpec(mRenderPageHeight, View.MeasureSpec.EXACTLY), 0, pageView.getLayoutParams().height);
-        pageView.measure(widthMeasureSpec, heightMeasureSpec);
-        pageView.layout(0, 0, mRenderPageWidth, mRenderPageHeight);
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY), 0, mPageView.getLayoutParams().height);
+        mPageView.measure(widthMeasureSpec, heightMeasureSpec);
+        mPageView.layout(0, 0, width, height);
+    }
+
+    private int getColumnRenderHeight(int column) {
+        final LinearLayout columnView = mColumnViews[column];
+        return columnView.getMeasuredHeight() - columnView.getPaddingTop() - columnView.getPaddingBottom();
+    }
 
-        return pageView;
+    private View bindSectionView(String title) {
+        ((TextView) mSectionView.findViewById(R.id.pdf_section_title)).setText(title);
+        return mSectionView;
     }
 
-    private View createSectionView(LayoutInflater layoutInflater, ViewGroup parent, String title) {
-        View sectionView = layoutInflater.inflate(R.layout.view_pdf_section, parent, false);
-        ((TextView) sectionView.findViewById(R.id.pdf_section_title)).setText(title);
-        return sectionView;
+    private View bindEntryView(int position) {
+        final int viewType = mViewAdapter.getItemViewType(position);
+        final View view = mViewAdapter.getView(position, mScrapViews.get(viewType), mMeasureParent);
+        mScrapViews.put(viewType, view);
+        return view;
     }
 
     private DiagnosisResult diagnose() {
@@ -647,24 +492,6 @@ public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
         view.measure(widthMeasureSpec, heightMeasureSpec);
     }
 
-    private void finishCurrentPage(View pageView, ArrayList<View> bodyViews, PdfDocument.Page pdfPage) {
-        final View bodyContainerView = pageView.findViewById(R.id.pdf_page_body_container);
-
-        // Render all entries for the current page
-        int bodyLeft = pageView.getPaddingLeft() + pageView.getLeft();
-        int bodyTop = bodyContainerView.getTop() + pageView.getPaddingTop();
-
-        Canvas pdfCanvas = pdfPage.getCanvas();
-        pdfCanvas.translate(bodyLeft, bodyTop);
-
-        for (View childView : bodyViews) {
-            pdfCanvas.save();
-            pdfCanvas.translate(childView.getLeft(), childView.getTop());
-            childView.draw(pdfPage.getCanvas());
-            pdfCanvas.restore();
-        }
-    }
-
     @SuppressLint("IntRange")
     private PageRange[] computeWrittenPageRanges(SparseIntArray writtenPages) {
         List<PageRange> pageRanges = new ArrayList<>();
@@ -750,6 +577,12 @@ public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
                     LinearLayout diagnosesContainer = (LinearLayout) convertView.findViewById(R.id.pdf_diagnosis_container);
                     LinearLayout managementContainer = (LinearLayout) convertView.findViewById(R.id.pdf_management_container);
 
+                    // Recycled views still hold the entries of the previous bind
+                    diagnosesContainer.removeAllViews();
+                    managementContainer.removeAllViews();
+                    convertView.findViewById(R.id.pdf_diagnosis_title).setVisibility(View.VISIBLE);
+                    convertView.findViewById(R.id.pdf_management_title).setVisibility(View.VISIBLE);
+
                     if (mDiagnosisResult.getDiagnosisCount() > 0) {
                         for (int i = 0; i < mDiagnosisResult.getDiagnosisCount(); i++) {
                             View view = mInflater.inflate(R.layout.view_pdf_diagnosis_entry, diagnosesContainer, false);
@@ -808,5 +641,79 @@ public class SummaryPrintDocumentAdapter extends PrintDocumentAdapter {
 
     }
 
-}
+    /**
+     * Page breaks and entry positions computed by onLayout for one render size.
+     */
+    private static class PageLayout {
+
+        private final int mDensity;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mItemCount;
+        private final int[] mColumns;
+        private final int[] mTops;
+        private final String[] mSectionTitles;
+        private final List<Integer> mPageStarts = new ArrayList<>();
+
+        PageLayout(int density, int width, int height, int itemCount) {
+            mDensity = density;
+            mWidth = width;
+            mHeight = height;
+            mItemCount = itemCount;
+            mColumns = new int[itemCount];
+            mTops = new int[itemCount];
+            mSectionTitles = new String[itemCount];
+            mPageStarts.add(0);
+        }
+
+        boolean matches(int density, int width, int height) {
+            return mDensity == density && mWidth == width && mHeight == height;
+        }
+
+        void startPage(int firstItem) {
+            mPageStarts.add(firstItem);
+        }
+
+        void place(int item, int column, int top, String sectionTitle) {
+            mColumns[item] = column;
+            mTops[item] = top;
+            mSectionTitles[item] = sectionTitle;
+        }
 
+        int getWidth() {
+            return mWidth;
+        }
+
+        int getHeight() {
+            return mHeight;
+        }
+
+        int getPageCount() {
+            return mPageStarts.size();
+        }
+
+        int getFirstItem(int page) {
+            return mPageStarts.get(page);
+        }
+
+        int getEndItem(int page) {
+            return (page + 1 < mPageStarts.size()) ? mPageStarts.get(page + 1) : mItemCount;
+        }
+
+        int getColumn(int item) {
+            return mColumns[item];
+        }
+
+        int getTop(int item) {
+            return mTops[item];
+        }
+
+        /**
+         * Title of the section starting right above the item, null if none.
+         */
+        String getSectionTitle(int item) {
+            return mSectionTitles[item];
+        }
+    }
+
+}
@@ -23,6 +23,9 @@ import android.app.Application;
 
 import org.neotree.inject.module.ActivityModule;
 import org.neotree.inject.module.ApplicationModule;
+import org.neotree.support.okhttp.APIGatewayHelper;
+import org.neotree.support.okhttp.HttpMetrics;
+import org.neotree.support.okhttp.SessionUploadQueue;
 
 import javax.inject.Singleton;
 
@@ -37,6 +40,12 @@ public interface ApplicationComponent {
 
     Application application();
 
+    APIGatewayHelper apiGatewayHelper();
+
+    HttpMetrics httpMetrics();
+
+    SessionUploadQueue sessionUploadQueue();
+
     ActivityComponent plus(ActivityModule module);
 
 }
@@ -21,14 +21,25 @@ package org.neotree.inject.module;
 
 import android.app.Application;
 import android.content.SharedPreferences;
+import android.content.res.Resources;
 import android.preference.PreferenceManager;
 
+import org.neotree.R;
+import org.neotree.support.okhttp.APIGatewayHelper;
+import org.neotree.support.okhttp.GzipRequestInterceptor;
+import org.neotree.support.okhttp.HttpMetrics;
+import org.neotree.support.okhttp.SessionUploadQueue;
 import org.neotree.support.rx.RxBus;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 
 /**
  * Created by matteo on 25/05/2016.
@@ -57,4 +68,43 @@ public class ApplicationModule {
       return PreferenceManager.getDefaultSharedPreferences(application);
     }
 
+    @Provides @Singleton
+    HttpMetrics provideHttpMetrics() {
+        return new HttpMetrics();
+    }
+
+    @Provides @Singleton
+    OkHttpClient provideOkHttpClient(Application application, HttpMetrics metrics) {
+        final Resources res = application.getResources();
+
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(res.getInteger(R.integer.api_max_requests));
+        dispatcher.setMaxRequestsPerHost(res.getInteger(R.integer.api_max_requests_per_host));
+
+        // HTTP/2 is negotiated automatically over TLS, keeping connections alive lets uploads reuse them
+        final OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(res.getInteger(R.integer.api_max_idle_connections),
+                        res.getInteger(R.integer.api_keep_alive_seconds), TimeUnit.SECONDS))
+                .connectTimeout(res.getInteger(R.integer.api_connect_timeout_seconds), TimeUnit.SECONDS)
+                .readTimeout(res.getInteger(R.integer.api_read_timeout_seconds), TimeUnit.SECONDS)
+                .writeTimeout(res.getInteger(R.integer.api_write_timeout_seconds), TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .eventListenerFactory(metrics);
+        if (res.getBoolean(R.bool.api_gzip_requests)) {
+            builder.addInterceptor(new GzipRequestInterceptor());
+        }
+        return builder.build();
+    }
+
+    @Provides @Singleton
+    APIGatewayHelper provideAPIGatewayHelper(OkHttpClient client) {
+        return new APIGatewayHelper(client, APIGatewayHelper.API_KEY);
+    }
+
+    @Provides @Singleton
+    SessionUploadQueue provideSessionUploadQueue(APIGatewayHelper api) {
+        return new SessionUploadQueue(api, APIGatewayHelper.SESSION_UPLOAD_URL);
+    }
+
 }
@@ -34,6 +34,8 @@ public class FileInfo implements Parcelable {
     public String type;
     public String data;
     public int size;
+    // Set once data has been moved to the ImageBlobStore
+    public String blobId;
 
     public FileInfo() {
 
@@ -50,6 +52,7 @@ public class FileInfo implements Parcelable {
         dest.writeString(this.type);
         dest.writeString(this.data);
         dest.writeInt(this.size);
+        dest.writeString(this.blobId);
     }
 
     protected FileInfo(Parcel in) {
@@ -57,6 +60,7 @@ public class FileInfo implements Parcelable {
         this.type = in.readString();
         this.data = in.readString();
         this.size = in.readInt();
+        this.blobId = in.readString();
     }
 
     public static final Creator<FileInfo> CREATOR = new Creator<FileInfo>() {
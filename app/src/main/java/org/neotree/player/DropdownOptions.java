@@ -0,0 +1,188 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.player;
+
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.neotree.model.firebase.Field;
+import org.neotree.model.firebase.Screen;
+import org.neotree.player.type.FieldType;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable option table of a dropdown field, parsed from its "id,label" lines.
+ *
+ * Tables are cached by their source text so the field view, the stored session values and
+ * everything reading those share a single parse.
+ */
+public final class DropdownOptions {
+
+    private static final String TAG = DropdownOptions.class.getSimpleName();
+
+    private static final int MAX_ENTRIES = 256;
+
+    private static final LruCache<String, DropdownOptions> sOptions = new LruCache<>(MAX_ENTRIES);
+    // Invalid tables, each is reported once and keeps its well formed lines for label lookups
+    private static final LruCache<String, DropdownOptions> sLenientOptions = new LruCache<>(MAX_ENTRIES);
+
+    private final List<String> mIds;
+    private final List<CharSequence> mLabels;
+    private final Map<String, Integer> mIndex;
+
+    private DropdownOptions(List<String> ids, List<CharSequence> labels) {
+        mIds = Collections.unmodifiableList(ids);
+        mLabels = Collections.unmodifiableList(labels);
+        mIndex = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            // First occurrence wins, as with a linear search
+            if (!mIndex.containsKey(ids.get(i))) {
+                mIndex.put(ids.get(i), i);
+            }
+        }
+    }
+
+    /**
+     * Returns the option table for the given values, throws IllegalArgumentException if they are
+     * empty or invalid.
+     */
+    public static DropdownOptions of(String values) {
+        if (TextUtils.isEmpty(values)) {
+            throw new IllegalArgumentException("Dropdown values are empty");
+        }
+
+        DropdownOptions options = sOptions.get(values);
+        if (options == null) {
+            if (sLenientOptions.get(values) != null) {
+                // Already parsed and reported
+                throw new IllegalArgumentException("Invalid dropdown values");
+            }
+            try {
+                options = parse(values, false);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Invalid dropdown values, skipping malformed lines", e);
+                sLenientOptions.put(values, parse(values, true));
+                throw e;
+            }
+            sOptions.put(values, options);
+        }
+        return options;
+    }
+
+    /**
+     * Returns the option table for the given values, with the malformed lines of an invalid table
+     * left out, or null if they are empty. Used where a stored value still needs its label.
+     */
+    public static DropdownOptions lenient(String values) {
+        if (TextUtils.isEmpty(values)) {
+            return null;
+        }
+
+        final DropdownOptions options = sLenientOptions.get(values);
+        if (options != null) {
+            return options;
+        }
+        try {
+            return of(values);
+        } catch (IllegalArgumentException e) {
+            return sLenientOptions.get(values);
+        }
+    }
+
+    /**
+     * Parses the option tables of all dropdown fields ahead of time, invalid values are logged once
+     * here and fail again when the field is shown.
+     */
+    public static void precompile(List<Screen> screens) {
+        for (Screen screen : screens) {
+            if (screen.metadata == null || screen.metadata.fields == null) {
+                continue;
+            }
+            for (Field field : screen.metadata.fields) {
+                if (FieldType.fromString(field.type) == FieldType.DROPDOWN && !TextUtils.isEmpty(field.values)) {
+                    try {
+                        of(field.values);
+                    } catch (IllegalArgumentException e) {
+                        // Ignore
+                    }
+                }
+            }
+        }
+    }
+
+    private static DropdownOptions parse(String values, boolean skipMalformed) {
+        final List<String> ids = new ArrayList<>();
+        final List<CharSequence> labels = new ArrayList<>();
+        try {
+            BufferedReader reader = new BufferedReader(new StringReader(values));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] item = line.split(",");
+                if (item.length < 2 && skipMalformed) {
+                    continue;
+                }
+                ids.add(item[0].trim());
+                labels.add(item[1].trim());
+            }
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid dropdown values", e);
+        }
+        return new DropdownOptions(ids, labels);
+    }
+
+    public int size() {
+        return mIds.size();
+    }
+
+    public String getId(int index) {
+        return mIds.get(index);
+    }
+
+    public CharSequence getLabel(int index) {
+        return mLabels.get(index);
+    }
+
+    public List<String> getIds() {
+        return mIds;
+    }
+
+    public List<CharSequence> getLabels() {
+        return mLabels;
+    }
+
+    public int indexOf(String id) {
+        final Integer index = (id != null) ? mIndex.get(id) : null;
+        return (index != null) ? index : -1;
+    }
+
+    public String labelOf(String id) {
+        final int index = indexOf(id);
+        return (index != -1) ? mLabels.get(index).toString() : null;
+    }
+
+}
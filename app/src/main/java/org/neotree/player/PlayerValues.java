@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package org.neotree.player;
+
+import org.neotree.player.validator.KeyValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import rx.functions.Action0;
+import rx.functions.Action1;
+
+/**
+ * Values entered during a session, keyed by their trimmed key.
+ *
+ * set() applies and announces a value at once. update() applies it in memory only, the change is
+ * announced and its commit action (usually storing it) runs on commit(); a later set() or update()
+ * of the same key supersedes the pending one. Either way the same final values are announced and
+ * stored, only less often.
+ */
+public class PlayerValues {
+
+    private final Map<String, Object> mValues = new HashMap<>();
+    private final Map<String, Action0> mPendingCommits = new LinkedHashMap<>();
+    private final Action1<KeyValue> mOnChange;
+
+    public PlayerValues(Action1<KeyValue> onChange) {
+        mOnChange = onChange;
+    }
+
+    /**
+     * Replaces all values, dropping pending commits.
+     */
+    public void reset(Map<String, ?> values) {
+        mValues.clear();
+        mPendingCommits.clear();
+        if (values != null) {
+            mValues.putAll(values);
+        }
+    }
+
+    public Object get(String key) {
+        return mValues.get(key);
+    }
+
+    public boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    /**
+     * The live values, including pending ones.
+     */
+    public Map<String, Object> asMap() {
+        return mValues;
+    }
+
+    /**
+     * @return true if the value was applied and announced
+     */
+    public boolean set(String key, Object value) {
+        final String trimmed = key.trim();
+        // An immediate value supersedes any pending one for the same key
+        final boolean pending = (mPendingCommits.remove(trimmed) != null);
+        final Object oldValue = mValues.get(trimmed);
+        if (pending || !equals(oldValue, value)) {
+            mValues.put(trimmed, value);
+            mOnChange.call(new KeyValue(trimmed, value));
+            return true;
+        }
+        return false;
+    }
+
+    public void update(String key, Object value, Action0 onCommit) {
+        final String trimmed = key.trim();
+        if (!equals(mValues.get(trimmed), value) || mPendingCommits.containsKey(trimmed)) {
+            mValues.put(trimmed, value);
+            mPendingCommits.put(trimmed, onCommit);
+        }
+    }
+
+    /**
+     * @return true if a pending value was committed
+     */
+    public boolean commit(String key) {
+        final String trimmed = key.trim();
+        final Action0 onCommit = mPendingCommits.remove(trimmed);
+        if (onCommit == null) {
+            return false;
+        }
+        mOnChange.call(new KeyValue(trimmed, mValues.get(trimmed)));
+        onCommit.call();
+        return true;
+    }
+
+    public void commitAll() {
+        for (String key : new ArrayList<>(mPendingCommits.keySet())) {
+            commit(key);
+        }
+    }
+
+    public boolean hasPending(String key) {
+        return mPendingCommits.containsKey(key.trim());
+    }
+
+    private static boolean equals(Object left, Object right) {
+        return (left == null) ? right == null : left.equals(right);
+    }
+
+}
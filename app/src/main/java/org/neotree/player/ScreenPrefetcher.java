@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.player;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.neotree.model.firebase.Field;
+import org.neotree.model.firebase.FileInfo;
+import org.neotree.model.firebase.Metadata;
+import org.neotree.model.firebase.Screen;
+import org.neotree.player.expression.ExpressionCache;
+import org.neotree.support.android.ImageLoader;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+/**
+ * Warms up the screens the player is likely to show next: their conditions and dropdown options
+ * are parsed and their images decoded into the image cache, so moving forward does not wait.
+ */
+public class ScreenPrefetcher {
+
+    private static final String TAG = ScreenPrefetcher.class.getSimpleName();
+
+    private final int mImageWidth;
+    private Subscription mSubscription;
+
+    public ScreenPrefetcher(int imageWidth) {
+        mImageWidth = imageWidth;
+    }
+
+    /**
+     * Replaces any prefetch still running with one for the next visible screens among the given
+     * candidates. Visibility is predicted in the background from a snapshot of the player values,
+     * conditions that fail to evaluate count as visible, as in {@link ScriptPlayer#nextScreen()}.
+     */
+    public void prefetch(List<Screen> candidates, Map<String, Object> values, int count) {
+        cancel();
+        if (candidates == null || candidates.isEmpty()) {
+            return;
+        }
+
+        mSubscription = Observable.from(candidates)
+                .subscribeOn(Schedulers.io())
+                .filter(screen -> isVisible(screen, values))
+                .take(count)
+                .subscribe(this::warm,
+                        throwable -> Log.e(TAG, "Error prefetching screens", throwable));
+    }
+
+    public void cancel() {
+        if (mSubscription != null && !mSubscription.isUnsubscribed()) {
+            mSubscription.unsubscribe();
+        }
+        mSubscription = null;
+    }
+
+    private static boolean isVisible(Screen screen, Map<String, Object> values) {
+        if (TextUtils.isEmpty(screen.condition)) {
+            return true;
+        }
+        try {
+            // Also leaves the parsed condition in the expression cache
+            return ScriptPlayer.evaluateCondition(screen.condition, values);
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    // The screen condition is already parsed by isVisible()
+    private void warm(Screen screen) {
+        DropdownOptions.precompile(Collections.singletonList(screen));
+
+        final Metadata metadata = screen.metadata;
+        if (metadata == null) {
+            return;
+        }
+
+        if (metadata.fields != null) {
+            for (Field field : metadata.fields) {
+                ExpressionCache.precompile(field.condition);
+            }
+        }
+
+        // Management screens only build their sections once shown, prefetch the source images
+        prefetchImage(metadata.image1);
+        prefetchImage(metadata.image2);
+        prefetchImage(metadata.image3);
+    }
+
+    private void prefetchImage(FileInfo image) {
+        if (image != null) {
+            ImageLoader.prefetch(image, mImageWidth);
+        }
+    }
+
+}
@@ -26,30 +26,35 @@ import android.util.Log;
 
 import com.google.firebase.database.DatabaseException;
 
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.neotree.BuildConfig;
 import org.neotree.NeoTree;
 import org.neotree.model.firebase.Screen;
 import org.neotree.model.firebase.Script;
 import org.neotree.model.realm.Session;
 import org.neotree.model.realm.SessionValue;
 import org.neotree.player.expression.BooleanExpressionEvaluator;
+import org.neotree.player.expression.ExpressionCache;
 import org.neotree.player.validator.KeyValue;
-import org.neotree.grammar.BooleanExpressionLexer;
 import org.neotree.grammar.BooleanExpressionParser;
 import org.neotree.support.datastore.RealmStore;
+import org.neotree.support.android.Logger;
+import org.neotree.support.metrics.MetricsRegistry;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import io.realm.Realm;
 import rx.Observable;
+import rx.functions.Action0;
 import rx.subjects.PublishSubject;
 
 /**
@@ -72,7 +77,7 @@ public class ScriptPlayer {
     private Script mScript;
     private List<Screen> mScreens;
     private Map<String, Integer> mScreenIdToIndexMap;
-    private Map<String, Object> mValues;
+    private final PlayerValues mValues;
     private ScriptPlayerListener mListener;
 
     private Session mSession;
@@ -84,6 +89,7 @@ public class ScriptPlayer {
         mContext = context;
         mListener = listener;
         mRealm = realm;
+        mValues = new PlayerValues(mValueChangeSubject::onNext);
     }
 
     public void setPlayerData(Script script, List<Screen> screens) {
@@ -92,7 +98,7 @@ public class ScriptPlayer {
     }
 
     private void preparePlayer(Context context, Script script, List<Screen> screens) {
-        Log.d(TAG, "Preparing to play script");
+        Logger.d(TAG, "Preparing to play script");
 
         if (screens == null || screens.size() == 0) {
             mListener.onScriptEmpty();
@@ -103,11 +109,10 @@ public class ScriptPlayer {
         mScreenStack = new ArrayDeque<>();
         mScript = script;
         mScreens = screens;
-        mValues = new HashMap<>();
 
         // Load global configuration values
         SharedPreferences configPrefs = NeoTree.getConfigurationPreferences(context);
-        mValues.putAll(configPrefs.getAll());
+        mValues.reset(configPrefs.getAll());
 
         try {
             // Map each screen id to its position
@@ -127,6 +132,7 @@ public class ScriptPlayer {
     }
 
     public void finishSession() {
+        flushPendingValues();
         RealmStore.finishSession(mRealm, mSession);
     }
 
@@ -149,23 +155,58 @@ public class ScriptPlayer {
         return (value != null) ? value : defaultValue;
     }
 
+    public Map<String, Object> getValues() {
+        return Collections.unmodifiableMap(mValues.asMap());
+    }
+
+    /**
+     * Copies the values entered so far, so that they can be read from another thread.
+     */
+    public Map<String, Object> snapshotValues() {
+        final Map<String, Object> snapshot = new HashMap<>(mValues.asMap().size());
+        for (Map.Entry<String, Object> entry : mValues.asMap().entrySet()) {
+            final Object value = entry.getValue();
+            snapshot.put(entry.getKey(), (value instanceof Set) ? new HashSet<>((Set<?>) value) : value);
+        }
+        return snapshot;
+    }
+
     public boolean hasValue(String key) {
-        return mValues.containsKey(key);
+        return mValues.contains(key);
     }
 
     public void setValue(String key, Object value) {
-        Object oldValue = mValues.get(key.trim());
-        if ((oldValue == null && value != null)
-                || (oldValue != null && value == null)
-                || (oldValue != null && !oldValue.equals(value))) {
-            Log.d(TAG, String.format("Setting value [key=%s, value=%s]", key.trim(), value));
-            mValues.put(key.trim(), value);
-
-            // Publish key/value/type? pair to RX observers (for form validation)
-            mValueChangeSubject.onNext(new KeyValue(key.trim(), value));
+        // Publishes the key/value pair to RX observers (for form validation) when it changed
+        if (mValues.set(key, value)) {
+            if (BuildConfig.DEBUG) {
+                Logger.d(TAG, "Set value [key=%s, value=%s]", key.trim(), value);
+            }
         }
     }
 
+    /**
+     * Updates the value in memory only. Observers are notified and onCommit is run (usually to
+     * store the value) once the value is committed, the value is visible to getValue() right away.
+     */
+    public void updateValue(String key, Object value, Action0 onCommit) {
+        mValues.update(key, value, onCommit);
+    }
+
+    public void commitValue(String key) {
+        if (mValues.commit(key)) {
+            if (BuildConfig.DEBUG) {
+                Logger.d(TAG, "Committed value [key=%s]", key.trim());
+            }
+        }
+    }
+
+    /**
+     * Commits all pending values, must run before the current screen changes.
+     */
+    public void flushPendingValues() {
+        mValues.commitAll();
+    }
+
     public void storeValue(String sectionTitle, SessionValue value) {
         final int position = currentScreen().position; // mScreenStack.peek()
         RealmStore.storeValue(mRealm, mScript.scriptId, mSession.getSessionId(), sectionTitle, position, value);
@@ -189,16 +230,7 @@ public class ScriptPlayer {
         }
 
         try {
-            BooleanExpressionLexer lexer = new BooleanExpressionLexer(new ANTLRInputStream(condition.trim()));
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
-            BooleanExpressionParser parser = new BooleanExpressionParser(tokens);
-            BooleanExpressionParser.RootContext tree = parser.root();
-
-            BooleanExpressionEvaluator evaluator = new BooleanExpressionEvaluator(this);
-            ParseTreeWalker.DEFAULT.walk(evaluator, tree);
-
-            boolean result = evaluator.getEvaluationResult();
-            return result;
+            return evaluateCondition(condition, mValues.asMap());
         } catch (Exception e) {
             if (mListener != null) {
                 notifyScriptError("The current screen contains an invalid conditional expression. Please check the configuration.", e);
@@ -207,30 +239,64 @@ public class ScriptPlayer {
         return true;
     }
 
+    static boolean evaluateCondition(String condition, Map<String, Object> values) {
+        BooleanExpressionParser.RootContext tree = ExpressionCache.parse(condition);
+
+        final long start = MetricsRegistry.startTimer();
+        BooleanExpressionEvaluator evaluator = new BooleanExpressionEvaluator(values);
+        ParseTreeWalker.DEFAULT.walk(evaluator, tree);
+        MetricsRegistry.get().stopTimer("expression.evaluate", start);
+
+        return evaluator.getEvaluationResult();
+    }
+
     public Screen nextScreen() {
+        flushPendingValues();
+
         if (mScreenStack.isEmpty()) {
             mScreenStack.push(0);
             return currentScreen();
         }
 
+        final long start = MetricsRegistry.startTimer();
+        try {
+            return findNextScreen();
+        } finally {
+            MetricsRegistry.get().stopTimer("player.next_screen", start);
+        }
+    }
+
+    private Screen findNextScreen() {
         int nextIndex = mScreenStack.peek() + 1;
         while (nextIndex < mScreens.size()) {
             final Screen screen = mScreens.get(nextIndex);
-            Log.d(TAG, "Check next screen: " + screen.title);
+            Logger.d(TAG, "Check next screen: %s", screen.title);
             if (isNextScreen(screen)) {
-                Log.d(TAG, "Showing as next screen...");
+                Logger.d(TAG, "Showing as next screen...");
                 mScreenStack.push(nextIndex);
                 return currentScreen();
             } else {
-                Log.d(TAG, "Skip...");
+                Logger.d(TAG, "Skip...");
             }
             nextIndex++;
         }
         return null;
     }
 
+    /**
+     * Copies the screens after the current one, candidates for {@link ScreenPrefetcher}.
+     */
+    public List<Screen> upcomingScreens() {
+        if (mScreens == null) {
+            return Collections.emptyList();
+        }
+        final int nextIndex = (mScreenStack.isEmpty()) ? 0 : mScreenStack.peek() + 1;
+        return new ArrayList<>(mScreens.subList(Math.min(nextIndex, mScreens.size()), mScreens.size()));
+    }
+
     public Screen previousScreen() throws ScriptPlayerException {
         // TODO: Verify order of operation is correct?
+        flushPendingValues();
         mScreenStack.pop();
 
         if (mScreenStack.isEmpty()) {
@@ -239,11 +305,14 @@ public class ScriptPlayer {
         return currentScreen();
     }
 
+    /**
+     * Replaces a single screen of the running script, redisplaying it only if it is the current one.
+     */
     public void updateScreen(Screen screen) {
-        if (mScreenIdToIndexMap.containsKey(screen.screenId)) {
+        if (mScreenIdToIndexMap != null && mScreenIdToIndexMap.containsKey(screen.screenId)) {
             final int position = mScreenIdToIndexMap.get(screen.screenId);
             mScreens.set(position, screen);
-            if (mListener != null) {
+            if (mListener != null && !mScreenStack.isEmpty() && mScreenStack.peek() == position) {
                 mListener.onCurrentScreenUpdated(screen);
             }
         }
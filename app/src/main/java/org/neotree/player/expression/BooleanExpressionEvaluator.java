@@ -19,14 +19,16 @@
 
 package org.neotree.player.expression;
 
-import android.util.Log;
 
+import org.neotree.BuildConfig;
 import org.neotree.player.ScriptPlayer;
 import org.neotree.grammar.BooleanExpressionBaseListener;
 import org.neotree.grammar.BooleanExpressionParser;
+import org.neotree.support.android.Logger;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -36,7 +38,7 @@ public class BooleanExpressionEvaluator extends BooleanExpressionBaseListener {
 
     private static final String TAG = BooleanExpressionEvaluator.class.getSimpleName();
 
-    private ScriptPlayer mScriptPlayer;
+    private Map<String, Object> mValues;
     private Deque<LogicOp> mOpStack = new ArrayDeque<>();
     private Deque<Boolean> mValStack = new ArrayDeque<>();
     private boolean mEvaluationResult;
@@ -50,7 +52,14 @@ public class BooleanExpressionEvaluator extends BooleanExpressionBaseListener {
     }
 
     public BooleanExpressionEvaluator(ScriptPlayer scriptPlayer) {
-        mScriptPlayer = scriptPlayer;
+        this(scriptPlayer.getValues());
+    }
+
+    /**
+     * Evaluates against the given values, e.g. a snapshot taken off the player's thread.
+     */
+    public BooleanExpressionEvaluator(Map<String, Object> values) {
+        mValues = values;
     }
 
     public boolean getEvaluationResult() {
@@ -60,7 +69,7 @@ public class BooleanExpressionEvaluator extends BooleanExpressionBaseListener {
     @Override
     public void exitRoot(BooleanExpressionParser.RootContext ctx) {
         super.exitRoot(ctx);
-        Log.d(TAG, "Expression evaluation complete");
+        Logger.d(TAG, "Expression evaluation complete");
         
         // End of evaluation, set the result
         mEvaluationResult = mValStack.pop();
@@ -109,11 +118,15 @@ public class BooleanExpressionEvaluator extends BooleanExpressionBaseListener {
         if (ctx.booleanLiteral() != null) {
             boolean value = Boolean.valueOf(ctx.valueBool.getText());
             result = evaluateBooleanAssertion(key, op, value);
-            Log.d(TAG, String.format("Boolean expr: %s %s %b -> %b", key, op, value, result));
+            if (BuildConfig.DEBUG) {
+                Logger.d(TAG, "Boolean expr: %s %s %b -> %b", key, op, value, result);
+            }
         } else if (ctx.numberLiteral() != null) {
             Double value = Double.valueOf(ctx.valueNumber.getText());
             result = evaluateNumberAssertion(key, op, value);
-            Log.d(TAG, String.format("Number expr: %s %s %.2f -> %b", key, op, value, result));
+            if (BuildConfig.DEBUG) {
+                Logger.d(TAG, "Number expr: %s %s %.2f -> %b", key, op, value, result);
+            }
         } else if (ctx.stringLiteral() != null) {
             String value = ctx.valueString.getText();
             if (value == null || "nil".equals(value) || "null".equals(value)) {
@@ -122,7 +135,9 @@ public class BooleanExpressionEvaluator extends BooleanExpressionBaseListener {
                 value = value.replaceAll("\"", "").replaceAll("'", "");
             }
             result = evaluateStringAssertion(key, op, value);
-            Log.d(TAG, String.format("String expr: %s %s %s -> %b", key, op, value, result));
+            if (BuildConfig.DEBUG) {
+                Logger.d(TAG, "String expr: %s %s %s -> %b", key, op, value, result);
+            }
         } else if (ctx.identifier() != null) {
             // TODO: Add identifier assertion
         }
@@ -130,7 +145,10 @@ public class BooleanExpressionEvaluator extends BooleanExpressionBaseListener {
     }
 
     private boolean evaluateBooleanAssertion(String key, Operation operation, boolean expValue) {
-        Boolean ctxValue = mScriptPlayer.getValue(key, Boolean.FALSE);
+        Boolean ctxValue = (Boolean) mValues.get(key);
+        if (ctxValue == null) {
+            ctxValue = Boolean.FALSE;
+        }
         switch (operation) {
             case EQ:
                 return ctxValue == expValue;
@@ -142,7 +160,7 @@ public class BooleanExpressionEvaluator extends BooleanExpressionBaseListener {
     }
 
     private boolean evaluateStringAssertion(String key, Operation operation, String expValue) {
-        Object ctxValue = mScriptPlayer.getValue(key);
+        Object ctxValue = mValues.get(key);
         boolean ctxValueNull = (ctxValue == null);
         boolean expValueNull = (expValue == null);
         switch (operation) {
@@ -178,7 +196,7 @@ public class BooleanExpressionEvaluator extends BooleanExpressionBaseListener {
     }
 
     private boolean evaluateNumberAssertion(String key, Operation operation, Double expValue) {
-        Double ctxValue = mScriptPlayer.getValue(key);
+        Double ctxValue = (Double) mValues.get(key);
         boolean ctxValueNull = (ctxValue == null);
         if (ctxValueNull) {
             // TODO: Assume 0 by default?
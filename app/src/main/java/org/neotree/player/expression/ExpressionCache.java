@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.player.expression;
+
+import android.util.LruCache;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.neotree.grammar.BooleanExpressionLexer;
+import org.neotree.grammar.BooleanExpressionParser;
+import org.neotree.support.metrics.MetricsRegistry;
+
+/**
+ * Parsed boolean expressions keyed by their source text.
+ *
+ * Screen, field and diagnosis conditions are parsed once and the tree is reused for every
+ * evaluation. Parse trees are not modified by walking them, so they can be shared across threads.
+ */
+public final class ExpressionCache {
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private static final LruCache<String, BooleanExpressionParser.RootContext> sTrees = new LruCache<>(MAX_ENTRIES);
+
+    private ExpressionCache() {
+
+    }
+
+    public static BooleanExpressionParser.RootContext parse(String expression) {
+        final String source = expression.trim();
+        BooleanExpressionParser.RootContext tree = sTrees.get(source);
+        if (tree == null) {
+            final long start = MetricsRegistry.startTimer();
+            BooleanExpressionLexer lexer = new BooleanExpressionLexer(new ANTLRInputStream(source));
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            BooleanExpressionParser parser = new BooleanExpressionParser(tokens);
+            tree = parser.root();
+            sTrees.put(source, tree);
+            MetricsRegistry.get().stopTimer("expression.parse", start);
+        }
+        return tree;
+    }
+
+    /**
+     * Parses the expression ahead of time, errors are left to be reported when it is evaluated.
+     */
+    public static void precompile(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            return;
+        }
+        try {
+            parse(expression);
+        } catch (Exception e) {
+            // Ignore, the evaluation will report it
+        }
+    }
+
+}
@@ -20,22 +20,21 @@
 package org.neotree.player.validator;
 
 import android.text.TextUtils;
-import android.util.Log;
 
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.neotree.model.firebase.Field;
 import org.neotree.model.firebase.Metadata;
 import org.neotree.model.firebase.Screen;
 import org.neotree.player.ScriptPlayer;
 import org.neotree.player.expression.BooleanExpressionEvaluator;
+import org.neotree.player.expression.ExpressionCache;
 import org.neotree.player.type.FieldType;
-import org.neotree.grammar.BooleanExpressionLexer;
 import org.neotree.grammar.BooleanExpressionParser;
 import org.neotree.support.datastore.RealmStore;
-import org.neotree.support.rx.RxHelper;
+import org.neotree.support.android.Logger;
+import org.neotree.support.metrics.MetricsRegistry;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -64,6 +63,9 @@ public class FormManager {
 
     private CompositeSubscription mSubscription;
 
+    private ArrayDeque<KeyValue> mPendingChanges = new ArrayDeque<>();
+    private boolean mDispatching;
+
     public FormManager(Screen screen, ScriptPlayer scriptPlayer) {
         mScreen = screen;
         mScriptPlayer = scriptPlayer;
@@ -133,17 +135,15 @@ public class FormManager {
                     }
                     return true;
                 })
-                        .compose(RxHelper.applySchedulers())
-//                .distinctUntilChanged()
+                        .distinctUntilChanged()
                         .subscribe((result) -> {
                             mFormValidSubject.onNext(result);
                         })
         );
 
-        // Subscribe to value changes
+        // Subscribe to value changes, validation is in memory work so it runs on the calling (main) thread
         addSubscription(mScriptPlayer.valueChangeObservable()
-                .compose(RxHelper.applySchedulers())
-                .subscribe(this::onValueChanged)
+                .subscribe(this::dispatchValueChanged)
         );
 
     }
@@ -160,15 +160,35 @@ public class FormManager {
         return (status != null && status);
     }
 
+    // Changes raised while handling a change (resetting a disabled field) are queued behind it
+    private void dispatchValueChanged(KeyValue pair) {
+        mPendingChanges.add(pair);
+        if (mDispatching) {
+            return;
+        }
+
+        // Covers conditions, validation and the next button event being sent, see setActionNextEnabled()
+        final long start = MetricsRegistry.startTimer();
+        mDispatching = true;
+        try {
+            while (!mPendingChanges.isEmpty()) {
+                onValueChanged(mPendingChanges.poll());
+            }
+        } finally {
+            mDispatching = false;
+            MetricsRegistry.get().stopTimer("form.value_change", start);
+        }
+    }
+
     private void onValueChanged(KeyValue pair) {
-        Log.d(TAG, "onValueChanged() - " + pair.toString());
+        Logger.d(TAG, "onValueChanged() - %s", pair);
 
         final Metadata metadata = mScreen.metadata;
         final ArrayList<Field> fields = metadata.fields;
 
         for (int i = 0; i < fields.size(); i++) {
             final Field field = fields.get(i);
-            Log.v(TAG, "Editing the value on field [key=%s]**********" +field.key);
+            Logger.v(TAG, "Editing the value on field [key=%s]", field.key);
             boolean currentStatus = isFieldEnabled(i);
             boolean newStatus = evaluateFieldCondition(field);
             if (currentStatus != newStatus) {
@@ -178,7 +198,7 @@ public class FormManager {
                 // Reset value of disabled field
                 final String fieldKey = field.key;
                 if(field.key.equals("NIDNUM")){
-                    Log.v(TAG, "Editing the key NIDNUM");
+                    Logger.v(TAG, "Editing the key NIDNUM");
                 }
                 if (!newStatus) {
                     mScriptPlayer.setValue(fieldKey, null);
@@ -245,13 +265,12 @@ public class FormManager {
         }
 
         try {
-            BooleanExpressionLexer lexer = new BooleanExpressionLexer(new ANTLRInputStream(condition.trim()));
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
-            BooleanExpressionParser parser = new BooleanExpressionParser(tokens);
-            BooleanExpressionParser.RootContext tree = parser.root();
+            BooleanExpressionParser.RootContext tree = ExpressionCache.parse(condition);
 
+            final long start = MetricsRegistry.startTimer();
             BooleanExpressionEvaluator evaluator = new BooleanExpressionEvaluator(mScriptPlayer);
             ParseTreeWalker.DEFAULT.walk(evaluator, tree);
+            MetricsRegistry.get().stopTimer("expression.evaluate", start);
 
             return evaluator.getEvaluationResult();
         } catch (Exception e) {
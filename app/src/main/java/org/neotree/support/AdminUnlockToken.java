@@ -0,0 +1,55 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support;
+
+import android.os.SystemClock;
+
+/**
+ * Memory only record of a successful admin unlock, so the password is not asked again (and
+ * re-hashed) until the token expires. It is bound to the password hash it was checked against and
+ * is lost with the process.
+ */
+public class AdminUnlockToken {
+
+    private static String sPasswordHash;
+    private static long sExpiresAt;
+
+    public static synchronized void grant(String passwordHash, long validityMillis) {
+        sPasswordHash = passwordHash;
+        sExpiresAt = SystemClock.elapsedRealtime() + validityMillis;
+    }
+
+    public static synchronized boolean isValid(String passwordHash) {
+        if (sPasswordHash == null || !sPasswordHash.equals(passwordHash)) {
+            return false;
+        }
+        if (SystemClock.elapsedRealtime() >= sExpiresAt) {
+            clear();
+            return false;
+        }
+        return true;
+    }
+
+    public static synchronized void clear() {
+        sPasswordHash = null;
+        sExpiresAt = 0;
+    }
+
+}
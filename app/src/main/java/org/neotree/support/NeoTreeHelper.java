@@ -22,8 +22,12 @@ package org.neotree.support;
 import android.app.Fragment;
 import android.content.Intent;
 
+import org.neotree.model.realm.AdminPassword;
+import org.neotree.support.datastore.RealmStore;
 import org.neotree.ui.activity.AdminUnlockDialogActivity;
 
+import io.realm.Realm;
+
 /**
  * Created by matteo on 24/09/2016.
  */
@@ -32,8 +36,31 @@ public class NeoTreeHelper {
 
     public static final int REQUEST_CODE_ADMIN_UNLOCK = 100;
 
-    public static void showAdminUnlockDialog(Fragment fragment) {
+    public interface OnAdminUnlockListener {
+        void onAdminUnlocked();
+    }
+
+    /**
+     * Calls the listener right away while an admin unlock is still valid, otherwise asks for the
+     * password; the fragment then gets REQUEST_CODE_ADMIN_UNLOCK in onActivityResult().
+     */
+    public static void showAdminUnlockDialog(Fragment fragment, OnAdminUnlockListener listener) {
+        if (hasValidUnlockToken()) {
+            listener.onAdminUnlocked();
+            return;
+        }
+
         Intent intent = new Intent(fragment.getActivity(), AdminUnlockDialogActivity.class);
         fragment.startActivityForResult(intent, REQUEST_CODE_ADMIN_UNLOCK);
     }
+
+    private static boolean hasValidUnlockToken() {
+        Realm realm = Realm.getDefaultInstance();
+        try {
+            AdminPassword stored = RealmStore.loadAdminPassword(realm);
+            return stored != null && AdminUnlockToken.isValid(stored.getPassword());
+        } finally {
+            realm.close();
+        }
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.android;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.ImageView;
+
+import org.neotree.R;
+import org.neotree.model.firebase.FileInfo;
+import org.neotree.support.datastore.ImageBlobStore;
+import org.neotree.support.rx.RxHelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import rx.Observable;
+import rx.Subscription;
+
+/**
+ * Binds script images to image views.
+ *
+ * Images are decoded in the background and downsampled to the width of the target view. Decoded
+ * bitmaps are kept in a memory LRU cache keyed by content and size, downsampled copies are also
+ * kept on disk so that they do not need to be decoded from the full image again.
+ */
+public final class ImageLoader {
+
+    private static final String TAG = ImageLoader.class.getSimpleName();
+
+    private static final long MAX_DISK_CACHE_BYTES = 20 * 1024 * 1024;
+
+    private static final LruCache<String, Bitmap> sMemoryCache =
+            new LruCache<String, Bitmap>((int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE)) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+
+    private static File sDiskCacheDir;
+
+    private ImageLoader() {
+
+    }
+
+    public static synchronized void initialize(File diskCacheDir) {
+        if (!diskCacheDir.isDirectory() && !diskCacheDir.mkdirs()) {
+            Log.e(TAG, "Error creating image cache directory: " + diskCacheDir.getAbsolutePath());
+            return;
+        }
+        sDiskCacheDir = diskCacheDir;
+    }
+
+    /**
+     * Width images are decoded for. Views in a recycler are usually not measured yet and script
+     * images span the screen, so the screen width is used for every view and for prefetching alike.
+     */
+    public static int targetWidth(Context context) {
+        return context.getResources().getDisplayMetrics().widthPixels;
+    }
+
+    /**
+     * Shows the image in the view once loaded, the view stays hidden if there is nothing to show.
+     * Any load still pending for a recycled view is cancelled.
+     */
+    public static void bind(ImageView view, FileInfo info) {
+        cancel(view);
+        view.setImageDrawable(null);
+        view.setVisibility(View.GONE);
+
+        final String contentKey = ImageBlobStore.contentKey(info);
+        if (contentKey == null) {
+            return;
+        }
+
+        final int targetWidth = targetWidth(view.getContext());
+        final String cacheKey = String.format("%s-w%d", contentKey, targetWidth);
+
+        final Bitmap cached = sMemoryCache.get(cacheKey);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            view.setVisibility(View.VISIBLE);
+            return;
+        }
+
+        Subscription subscription = Observable.defer(() -> {
+            try {
+                return Observable.just(load(info, cacheKey, targetWidth));
+            } catch (IOException e) {
+                return Observable.<Bitmap>error(e);
+            }
+        })
+                .compose(RxHelper.<Bitmap>applySchedulers())
+                .subscribe(bitmap -> {
+                    view.setTag(R.id.tag_image_request, null);
+                    if (bitmap != null) {
+                        view.setImageBitmap(bitmap);
+                        view.setVisibility(View.VISIBLE);
+                    }
+                }, throwable -> {
+                    view.setTag(R.id.tag_image_request, null);
+                    Log.e(TAG, String.format("Error decoding image [filename=%s]", info.filename), throwable);
+                });
+        view.setTag(R.id.tag_image_request, subscription);
+    }
+
+    /**
+     * Decodes the image into the memory cache ahead of a later bind(), blocks so it must not be
+     * called on the main thread. targetWidth must come from {@link #targetWidth(Context)}.
+     */
+    public static void prefetch(FileInfo info, int targetWidth) {
+        final String contentKey = ImageBlobStore.contentKey(info);
+        if (contentKey == null) {
+            return;
+        }
+
+        final String cacheKey = String.format("%s-w%d", contentKey, targetWidth);
+        if (sMemoryCache.get(cacheKey) != null) {
+            return;
+        }
+
+        try {
+            load(info, cacheKey, targetWidth);
+        } catch (IOException e) {
+            Log.e(TAG, String.format("Error prefetching image [filename=%s]", info.filename), e);
+        }
+    }
+
+    public static void cancel(ImageView view) {
+        final Object pending = view.getTag(R.id.tag_image_request);
+        if (pending instanceof Subscription) {
+            ((Subscription) pending).unsubscribe();
+        }
+        view.setTag(R.id.tag_image_request, null);
+    }
+
+    private static Bitmap load(FileInfo info, String cacheKey, int targetWidth) throws IOException {
+        final File cacheFile = (sDiskCacheDir != null) ? new File(sDiskCacheDir, cacheKey) : null;
+        if (cacheFile != null && cacheFile.exists()) {
+            final Bitmap bitmap = BitmapFactory.decodeFile(cacheFile.getPath());
+            if (bitmap != null) {
+                //noinspection ResultOfMethodCallIgnored
+                cacheFile.setLastModified(System.currentTimeMillis());
+                sMemoryCache.put(cacheKey, bitmap);
+                return bitmap;
+            }
+        }
+
+        final byte[] bytes = ImageBlobStore.get().read(info);
+
+        // Read the dimensions first and decode at the smallest power of two that still fills the view
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= targetWidth) {
+            options.inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+
+        final Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (bitmap == null) {
+            return null;
+        }
+        sMemoryCache.put(cacheKey, bitmap);
+        if (cacheFile != null && options.inSampleSize > 1) {
+            storeOnDisk(cacheFile, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static void storeOnDisk(File cacheFile, Bitmap bitmap) {
+        final File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Error caching image: " + cacheFile.getAbsolutePath(), e);
+            return;
+        }
+        if (tmpFile.renameTo(cacheFile)) {
+            trimDiskCache();
+        }
+    }
+
+    private static synchronized void trimDiskCache() {
+        final File[] files = sDiskCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Stat each file once, files touched by a concurrent load must not change the order mid-sort
+        final CacheEntry[] entries = new CacheEntry[files.length];
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            entries[i] = new CacheEntry(files[i]);
+            total += entries[i].length;
+        }
+        if (total <= MAX_DISK_CACHE_BYTES) {
+            return;
+        }
+
+        // Least recently used first
+        Arrays.sort(entries, (left, right) -> Long.compare(left.lastModified, right.lastModified));
+        for (CacheEntry entry : entries) {
+            if (total <= MAX_DISK_CACHE_BYTES) {
+                break;
+            }
+            if (entry.file.delete()) {
+                total -= entry.length;
+            }
+        }
+    }
+
+    private static class CacheEntry {
+        final File file;
+        final long lastModified;
+        final long length;
+
+        CacheEntry(File file) {
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.android;
+
+import android.util.Log;
+
+import org.neotree.BuildConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Logging facade for hot paths.
+ *
+ * Messages are format strings, only formatted when the level is enabled for the tag; the one and
+ * two argument overloads do not build an argument array. Verbose and debug bodies sit behind the
+ * constant BuildConfig.DEBUG so javac drops them from release builds, which are not minified.
+ * The call sites still evaluate and box their arguments, wrap hot path calls that take more than
+ * two arguments or compute one in {@code if (BuildConfig.DEBUG)} as well.
+ */
+public final class Logger {
+
+    private static final int DEFAULT_LEVEL = (BuildConfig.DEBUG) ? Log.VERBOSE : Log.INFO;
+
+    private static final Map<String, Integer> sLevels = new ConcurrentHashMap<>();
+
+    private Logger() {
+
+    }
+
+    /**
+     * Sets the lowest level logged for the tag, using android.util.Log priorities.
+     */
+    public static void setLevel(String tag, int level) {
+        sLevels.put(tag, level);
+    }
+
+    public static boolean isLoggable(String tag, int level) {
+        final Integer tagLevel = sLevels.get(tag);
+        return level >= ((tagLevel != null) ? tagLevel : DEFAULT_LEVEL);
+    }
+
+    public static void v(String tag, String message) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.VERBOSE)) {
+            Log.v(tag, message);
+        }
+    }
+
+    public static void v(String tag, String format, Object arg) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.VERBOSE)) {
+            Log.v(tag, String.format(format, arg));
+        }
+    }
+
+    public static void v(String tag, String format, Object arg1, Object arg2) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.VERBOSE)) {
+            Log.v(tag, String.format(format, arg1, arg2));
+        }
+    }
+
+    public static void v(String tag, String format, Object... args) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.VERBOSE)) {
+            Log.v(tag, String.format(format, args));
+        }
+    }
+
+    public static void d(String tag, String message) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.DEBUG)) {
+            Log.d(tag, message);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.DEBUG)) {
+            Log.d(tag, String.format(format, arg));
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.DEBUG)) {
+            Log.d(tag, String.format(format, arg1, arg2));
+        }
+    }
+
+    public static void d(String tag, String format, Object... args) {
+        if (BuildConfig.DEBUG && isLoggable(tag, Log.DEBUG)) {
+            Log.d(tag, String.format(format, args));
+        }
+    }
+
+    public static void i(String tag, String format, Object... args) {
+        if (isLoggable(tag, Log.INFO)) {
+            Log.i(tag, (args.length > 0) ? String.format(format, args) : format);
+        }
+    }
+
+    public static void w(String tag, String format, Object... args) {
+        if (isLoggable(tag, Log.WARN)) {
+            Log.w(tag, (args.length > 0) ? String.format(format, args) : format);
+        }
+    }
+
+}
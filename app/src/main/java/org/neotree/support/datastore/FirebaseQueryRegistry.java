@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.datastore;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+
+/**
+ * Shares Firebase value listeners between subscribers of the same query.
+ *
+ * Each query key maps to at most one underlying listener. The listener is attached by the first
+ * subscriber and removed when the last one unsubscribes, late subscribers get the latest value
+ * straight away. Single value fetches are shared only while they are in flight.
+ */
+public class FirebaseQueryRegistry {
+
+    private static final String TAG = FirebaseQueryRegistry.class.getSimpleName();
+
+    private final HashMap<String, Entry<?>> mEntries = new HashMap<>();
+    private final AtomicLong mEventCount = new AtomicLong();
+    private final AtomicLong mSharedCount = new AtomicLong();
+
+    private static class Entry<T> {
+        Observable<T> observable;
+        final AtomicInteger subscriberCount = new AtomicInteger();
+    }
+
+    /**
+     * Shares a long lived value listener, keeping it attached while anyone is subscribed.
+     */
+    public <T> Observable<T> share(String key, Observable<T> source) {
+        return register(key, source);
+    }
+
+    /**
+     * Shares a single value fetch, concurrent callers wait for the same response.
+     */
+    public <T> Observable<T> shareOnce(String key, Observable<T> source) {
+        return register("once:" + key, source.take(1));
+    }
+
+    // The entry is looked up or created on subscribe, a query that is only built holds no listener
+    private <T> Observable<T> register(String key, Observable<T> source) {
+        return Observable.defer(() -> {
+            final Entry<T> entry = obtain(key, source);
+            return entry.observable
+                    .doOnSubscribe(entry.subscriberCount::incrementAndGet)
+                    .doOnUnsubscribe(entry.subscriberCount::decrementAndGet);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> Entry<T> obtain(String key, Observable<T> source) {
+        Entry<T> entry = (Entry<T>) mEntries.get(key);
+        if (entry == null) {
+            final Entry<T> created = new Entry<>();
+            created.observable = source
+                    .doOnNext(value -> mEventCount.incrementAndGet())
+                    // Runs when the listener is detached, after completion or when the last subscriber leaves
+                    .doOnUnsubscribe(() -> release(key, created))
+                    .replay(1)
+                    .refCount();
+            mEntries.put(key, created);
+            entry = created;
+        } else {
+            mSharedCount.incrementAndGet();
+            Log.v(TAG, String.format("Sharing listener [key=%s, subscribers=%d]", key, entry.subscriberCount.get()));
+        }
+        return entry;
+    }
+
+    private synchronized void release(String key, Entry<?> entry) {
+        if (mEntries.get(key) == entry) {
+            mEntries.remove(key);
+        }
+    }
+
+    /**
+     * Number of distinct queries currently registered, at most one Firebase listener each.
+     */
+    public synchronized int getListenerCount() {
+        return mEntries.size();
+    }
+
+    public synchronized int getSubscriberCount() {
+        int count = 0;
+        for (Entry<?> entry : mEntries.values()) {
+            count += entry.subscriberCount.get();
+        }
+        return count;
+    }
+
+    /**
+     * Number of subscriptions served by an already registered listener instead of a new one.
+     */
+    public long getSharedCount() {
+        return mSharedCount.get();
+    }
+
+    public long getEventCount() {
+        return mEventCount.get();
+    }
+
+    public synchronized Map<String, Integer> getSubscriberCounts() {
+        final HashMap<String, Integer> counts = new HashMap<>();
+        for (Map.Entry<String, Entry<?>> entry : mEntries.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().subscriberCount.get());
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FirebaseQueryRegistry[listeners=%d, subscribers=%d, shared=%d, events=%d]",
+                getListenerCount(), getSubscriberCount(), getSharedCount(), getEventCount());
+    }
+
+}
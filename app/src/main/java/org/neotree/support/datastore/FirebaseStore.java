@@ -26,13 +26,17 @@ import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.GenericTypeIndicator;
 import com.google.firebase.database.Query;
 
+import org.neotree.BuildConfig;
 import org.neotree.model.firebase.AdminPassword;
 import org.neotree.model.firebase.ConfigKey;
 import org.neotree.model.firebase.Diagnosis;
 import org.neotree.model.firebase.Screen;
 import org.neotree.model.firebase.Script;
 import org.neotree.model.firebase.ScriptNeotreeId;
+import org.neotree.support.android.Logger;
+import org.neotree.support.metrics.MetricsRegistry;
 import org.neotree.support.rx.RxFirebase;
+import org.neotree.support.rx.data.Pair;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -43,6 +47,9 @@ import java.util.Map;
 
 import rx.Observable;
 import rx.Subscription;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
 import rx.subscriptions.CompositeSubscription;
 
 /**
@@ -86,12 +93,13 @@ public class FirebaseStore {
     private FirebaseDatabase mDatabase;
     private CompositeSubscription mSubscription;
     private HashMap<String, Subscription> mManagedSubscriptions = new HashMap<>();
+    private final FirebaseQueryRegistry mQueries = new FirebaseQueryRegistry();
+    private final Subject<Pair<String, RxFirebase.FirebaseChildEvent<Screen>>, Pair<String, RxFirebase.FirebaseChildEvent<Screen>>> mScreenChanges =
+            PublishSubject.<Pair<String, RxFirebase.FirebaseChildEvent<Screen>>>create().toSerialized();
 
     private List<ConfigKey> mConfigKeys;
-    private List<Script> mScripts;
-    private Map<String, List<Screen>> mScreens;
 
-    private Comparator<Screen> mScreenComparator = (left, right) -> {
+    static final Comparator<Screen> SCREEN_COMPARATOR = (left, right) -> {
         if (left.position == null) {
             return -1;
         } else if (right.position == null) {
@@ -135,14 +143,13 @@ public class FirebaseStore {
 
     public Observable<List<Script>> loadScripts() {
         //noinspection unchecked
-        return RxFirebase.observeOnce(queryScripts(), TYPE_SCRIPTS_LIST)
+        return mQueries.shareOnce(path(SCRIPTS), RxFirebase.observeOnce(queryScripts(), TYPE_SCRIPTS_LIST))
+                .compose(timeLoad("firebase.load.scripts"))
                 .map(result -> convertMapToList((Map<String, Script>) result));
     }
 
     public List<Script> loadScriptsSync() {
-        //noinspection unchecked
-        return (List<Script>) RxFirebase.observeOnce(queryScripts(), TYPE_SCRIPTS_LIST)
-                .map(result -> convertMapToList((Map<String, Script>) result))
+        return loadScripts()
                 .toBlocking()
                 .single();
 
@@ -150,11 +157,17 @@ public class FirebaseStore {
 
     public Observable<AdminPassword> observeAdminPassword() {
         //noinspection unchecked
-        return RxFirebase.observe(query(ADMIN_PASSWORD), TYPE_ADMIN_PASSWORD);
+        return mQueries.share(path(ADMIN_PASSWORD), RxFirebase.observe(query(ADMIN_PASSWORD), TYPE_ADMIN_PASSWORD));
     }
     public Observable<DataSnapshot> observeScriptNeotreeId(String deviceId) {
-        //noinspection unchecked
-        return RxFirebase.observes(queryNeotreeId(deviceId));
+        return mQueries.share(path(NEOTREE_ID, deviceId), RxFirebase.observes(queryNeotreeId(deviceId)));
+    }
+
+    /**
+     * Listener and subscriber counts of the shared queries, for diagnostics.
+     */
+    public FirebaseQueryRegistry getQueryRegistry() {
+        return mQueries;
     }
 
     public Observable<RxFirebase.FirebaseChildEvent<Script>> observeScripts() {
@@ -175,9 +188,25 @@ public class FirebaseStore {
 
 
     public Observable<List<Screen>> loadScreens(String scriptId) {
+        return Observable.defer(() -> {
+            final List<Screen> cached = ScriptCache.get().getScreens(scriptId);
+            if (cached != null) {
+                MetricsRegistry.get().increment("script_cache.screens.hit");
+                return Observable.just(cached);
+            }
+            MetricsRegistry.get().increment("script_cache.screens.miss");
+            // Caching moves images to disk, keep it off the Firebase callback (main) thread
+            return fetchScreens(scriptId)
+                    .observeOn(Schedulers.io())
+                    .doOnNext(screens -> ScriptCache.get().putScreens(scriptId, screens));
+        });
+    }
+
+    private Observable<List<Screen>> fetchScreens(String scriptId) {
         //noinspection unchecked
-        return RxFirebase.observeOnce(queryScreens(scriptId), TYPE_SCREENS_LIST)
-                .map(result -> convertMapToList((Map<String, Screen>) result, mScreenComparator));
+        return mQueries.shareOnce(path(SCREEENS, scriptId), RxFirebase.observeOnce(queryScreens(scriptId), TYPE_SCREENS_LIST))
+                .compose(timeLoad("firebase.load.screens"))
+                .map(result -> convertMapToList((Map<String, Screen>) result, SCREEN_COMPARATOR));
     }
 
     public Observable<RxFirebase.FirebaseChildEvent<Screen>> observeScreens(String scriptId) {
@@ -185,10 +214,34 @@ public class FirebaseStore {
         return RxFirebase.observeChildren(queryScreens(scriptId), TYPE_SCREEN);
     }
 
+    /**
+     * Screen events of a script that have already been applied to the cached bundle.
+     */
+    public Observable<RxFirebase.FirebaseChildEvent<Screen>> observeScreenChanges(String scriptId) {
+        return mScreenChanges
+                .filter(change -> scriptId.equals(change.getValue1()))
+                .map(Pair::getValue2);
+    }
+
     public Observable<List<Diagnosis>> loadDiagnosis(String scriptId) {
+        return Observable.defer(() -> {
+            final List<Diagnosis> cached = ScriptCache.get().getDiagnosis(scriptId);
+            if (cached != null) {
+                MetricsRegistry.get().increment("script_cache.diagnosis.hit");
+                return Observable.just(cached);
+            }
+            MetricsRegistry.get().increment("script_cache.diagnosis.miss");
+            return fetchDiagnosis(scriptId)
+                    .observeOn(Schedulers.io())
+                    .doOnNext(diagnosis -> ScriptCache.get().putDiagnosis(scriptId, diagnosis));
+        });
+    }
+
+    private Observable<List<Diagnosis>> fetchDiagnosis(String scriptId) {
         //noinspection unchecked
-        return RxFirebase.observeOnce(queryDiagnosis(scriptId), TYPE_DIAGNOSIS_LIST)
-                .map(result -> convertMapToList((Map<String, Screen>) result));
+        return mQueries.shareOnce(path(DIAGNOSIS, scriptId), RxFirebase.observeOnce(queryDiagnosis(scriptId), TYPE_DIAGNOSIS_LIST))
+                .compose(timeLoad("firebase.load.diagnosis"))
+                .map(result -> convertMapToList((Map<String, Diagnosis>) result));
     }
 
     public Observable<RxFirebase.FirebaseChildEvent<Diagnosis>> observeDiagnosis(String scriptId) {
@@ -196,6 +249,14 @@ public class FirebaseStore {
         return RxFirebase.observeChildren(queryDiagnosis(scriptId), TYPE_DIAGNOSIS);
     }
 
+    // Time from subscription to the first result of a one-shot load
+    private static <T> Observable.Transformer<T, T> timeLoad(String metric) {
+        return observable -> Observable.defer(() -> {
+            final long start = MetricsRegistry.startTimer();
+            return observable.doOnNext(value -> MetricsRegistry.get().stopTimer(metric, start));
+        });
+    }
+
     public Query queryConfigKeys() {
         return query(CONFIG_KEYS);
     }
@@ -233,7 +294,9 @@ public class FirebaseStore {
     }
 
     private Query query(String collection, String... params) {
-        return mDatabase.getReference(path(collection, params));
+        // One-off reads may happen before initialize() or after destroy(), e.g. from the session history
+        final FirebaseDatabase database = (mDatabase != null) ? mDatabase : FirebaseDatabase.getInstance();
+        return database.getReference(path(collection, params));
     }
 
     public void subscribe() {
@@ -242,11 +305,13 @@ public class FirebaseStore {
             switch (event.eventType) {
                 case RxFirebase.FirebaseChildEvent.TYPE_ADD:
                     Log.d(TAG, String.format("Script event [type=ADD, key=%s]", event.key));
+                    ScriptCache.get().validate(event.key, event.value);
                     subscribeScriptScreens(event.key);
                     subscribeScriptDiagnosis(event.key);
                     break;
                 case RxFirebase.FirebaseChildEvent.TYPE_CHANGE:
                     Log.d(TAG, String.format("Script event [type=CHANGE, key=%s]", event.key));
+                    ScriptCache.get().validate(event.key, event.value);
                     break;
                 case RxFirebase.FirebaseChildEvent.TYPE_MOVE:
                     Log.d(TAG, String.format("Script event [type=MOVE, key=%s]", event.key));
@@ -255,6 +320,7 @@ public class FirebaseStore {
                     Log.d(TAG, String.format("Script event [type=REMOVE, key=%s]", event.key));
                     unsubscribeScriptScreens(event.key);
                     unsubscribeScriptDiagnosis(event.key);
+                    ScriptCache.get().remove(event.key);
                     break;
             }
         }));
@@ -267,23 +333,21 @@ public class FirebaseStore {
     }
 
     public void subscribeScriptScreens(String scriptId) {
+        if (hasManagedSubscription(String.format("screens/%s", scriptId))) {
+            return;
+        }
         Log.d(TAG, String.format("Subscribing to screen data changes [scriptId=%s]", scriptId));
-        Subscription subscription = observeScreens(scriptId).subscribe(event -> {
-            switch (event.eventType) {
-                case RxFirebase.FirebaseChildEvent.TYPE_ADD:
-                    Log.d(TAG, String.format("Screen event [type=ADD, scriptId=%s, key=%s]", scriptId, event.key));
-                    break;
-                case RxFirebase.FirebaseChildEvent.TYPE_CHANGE:
-                    Log.d(TAG, String.format("Screen event [type=CHANGE, scriptId=%s, key=%s]", scriptId, event.key));
-                    break;
-                case RxFirebase.FirebaseChildEvent.TYPE_MOVE:
-                    Log.d(TAG, String.format("Screen event [type=MOVE, scriptId=%s, key=%s]", scriptId, event.key));
-                    break;
-                case RxFirebase.FirebaseChildEvent.TYPE_REMOVE:
-                    Log.d(TAG, String.format("Screen event [type=REMOVE, scriptId=%s, key=%s]", scriptId, event.key));
-                    break;
-            }
-        });
+        Subscription subscription = observeScreens(scriptId)
+                // Patching may need to load the cached bundle from disk, keep it off the main thread
+                .observeOn(Schedulers.io())
+                .subscribe(event -> {
+                    if (BuildConfig.DEBUG) {
+                        Logger.d(TAG, "Screen event [type=%s, scriptId=%s, key=%s]", eventName(event), scriptId, event.key);
+                    }
+                    if (ScriptCache.get().patchScreen(scriptId, event)) {
+                        mScreenChanges.onNext(new Pair<>(scriptId, event));
+                    }
+                }, throwable -> Log.e(TAG, String.format("Error observing screens [scriptId=%s]", scriptId), throwable));
         addManagedSubscription(String.format("screens/%s", scriptId), subscription);
     }
 
@@ -293,23 +357,18 @@ public class FirebaseStore {
     }
 
     public void subscribeScriptDiagnosis(String scriptId) {
+        if (hasManagedSubscription(String.format("diagnosis/%s", scriptId))) {
+            return;
+        }
         Log.d(TAG, String.format("Subscribing to diagnosis data changes [scriptId=%s]", scriptId));
-        Subscription subscription = observeDiagnosis(scriptId).subscribe(event -> {
-            switch (event.eventType) {
-                case RxFirebase.FirebaseChildEvent.TYPE_ADD:
-                    Log.d(TAG, String.format("Diagnosis event [type=ADD, scriptId=%s, key=%s]", scriptId, event.key));
-                    break;
-                case RxFirebase.FirebaseChildEvent.TYPE_CHANGE:
-                    Log.d(TAG, String.format("Diagnosis event [type=CHANGE, scriptId=%s, key=%s]", scriptId, event.key));
-                    break;
-                case RxFirebase.FirebaseChildEvent.TYPE_MOVE:
-                    Log.d(TAG, String.format("Diagnosis event [type=MOVE, scriptId=%s, key=%s]", scriptId, event.key));
-                    break;
-                case RxFirebase.FirebaseChildEvent.TYPE_REMOVE:
-                    Log.d(TAG, String.format("Diagnosis event [type=REMOVE, scriptId=%s, key=%s]", scriptId, event.key));
-                    break;
-            }
-        });
+        Subscription subscription = observeDiagnosis(scriptId)
+                .observeOn(Schedulers.io())
+                .subscribe(event -> {
+                    if (BuildConfig.DEBUG) {
+                        Logger.d(TAG, "Diagnosis event [type=%s, scriptId=%s, key=%s]", eventName(event), scriptId, event.key);
+                    }
+                    ScriptCache.get().patchDiagnosis(scriptId, event);
+                }, throwable -> Log.e(TAG, String.format("Error observing diagnosis [scriptId=%s]", scriptId), throwable));
         addManagedSubscription(String.format("diagnosis/%s", scriptId), subscription);
     }
 
@@ -323,6 +382,7 @@ public class FirebaseStore {
             mSubscription.unsubscribe();
         }
         mSubscription = null;
+        mManagedSubscriptions.clear();
         mDatabase = null;
         sInstance = null;
     }
@@ -338,6 +398,21 @@ public class FirebaseStore {
         return path.toString();
     }
 
+    private static String eventName(RxFirebase.FirebaseChildEvent<?> event) {
+        switch (event.eventType) {
+            case RxFirebase.FirebaseChildEvent.TYPE_ADD:
+                return "ADD";
+            case RxFirebase.FirebaseChildEvent.TYPE_CHANGE:
+                return "CHANGE";
+            case RxFirebase.FirebaseChildEvent.TYPE_MOVE:
+                return "MOVE";
+            case RxFirebase.FirebaseChildEvent.TYPE_REMOVE:
+                return "REMOVE";
+            default:
+                return String.valueOf(event.eventType);
+        }
+    }
+
     private <K, V> List<V> convertMapToList(Map<K, V> map) {
         return convertMapToList(map, null);
     }
@@ -380,12 +455,16 @@ public class FirebaseStore {
             return;
         }
 
-        Subscription subscription = mManagedSubscriptions.get(key);
+        Subscription subscription = mManagedSubscriptions.remove(key);
         if (subscription != null) {
             removeSubscription(subscription);
         }
     }
 
+    private boolean hasManagedSubscription(String key) {
+        return mManagedSubscriptions != null && mManagedSubscriptions.containsKey(key);
+    }
+
     public  void  adddeviceScriptIncrementId(String incrementId,String  deviceId){
         if (!get().isInitialized()) {
             get().initialize();
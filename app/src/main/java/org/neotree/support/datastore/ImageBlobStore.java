@@ -0,0 +1,204 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.datastore;
+
+import android.text.TextUtils;
+import android.util.Base64;
+import android.util.Log;
+
+import org.neotree.model.firebase.Diagnosis;
+import org.neotree.model.firebase.FileInfo;
+import org.neotree.model.firebase.Metadata;
+import org.neotree.model.firebase.Screen;
+import org.neotree.model.firebase.Section;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import rx.Observable;
+
+/**
+ * Content addressed store for images embedded as Base64 in script metadata.
+ *
+ * When a script is cached the image payloads are moved out of the {@link FileInfo} objects into
+ * one file per image, named after the SHA-1 of its bytes, and only the reference is kept. Images
+ * are read back when a view actually binds them.
+ */
+public class ImageBlobStore {
+
+    private static final String TAG = ImageBlobStore.class.getSimpleName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ImageBlobStore sInstance;
+
+    public static synchronized ImageBlobStore get() {
+        if (sInstance == null) {
+            sInstance = new ImageBlobStore();
+        }
+        return sInstance;
+    }
+
+    private File mBlobDir;
+
+    private ImageBlobStore() {
+
+    }
+
+    public synchronized void initialize(File blobDir) {
+        if (!blobDir.isDirectory() && !blobDir.mkdirs()) {
+            Log.e(TAG, "Error creating image blob directory: " + blobDir.getAbsolutePath());
+            return;
+        }
+        mBlobDir = blobDir;
+    }
+
+    /**
+     * Stable identifier of the image content, usable as a cache key.
+     */
+    public static String contentKey(FileInfo info) {
+        if (info == null) {
+            return null;
+        }
+        if (!TextUtils.isEmpty(info.blobId)) {
+            return info.blobId;
+        }
+        // Digest rather than String.hashCode(), colliding keys would show the wrong image from the disk cache
+        return (info.data != null) ? "inline-" + hash(info.data.getBytes(UTF_8)) : null;
+    }
+
+    public void extract(List<Screen> screens) {
+        if (screens == null) {
+            return;
+        }
+        for (Screen screen : screens) {
+            final Metadata metadata = screen.metadata;
+            if (metadata == null) {
+                continue;
+            }
+            extract(metadata.image1);
+            extract(metadata.image2);
+            extract(metadata.image3);
+            if (metadata.sections != null) {
+                for (Section section : metadata.sections) {
+                    extract(section.image);
+                }
+            }
+        }
+    }
+
+    public void extractDiagnosis(List<Diagnosis> diagnosisList) {
+        if (diagnosisList == null) {
+            return;
+        }
+        for (Diagnosis diagnosis : diagnosisList) {
+            extract(diagnosis.image1);
+            extract(diagnosis.image2);
+            extract(diagnosis.image3);
+        }
+    }
+
+    /**
+     * Moves the inline image payload into the blob store, leaving only its reference behind.
+     */
+    public void extract(FileInfo info) {
+        if (info == null || TextUtils.isEmpty(info.data) || mBlobDir == null) {
+            return;
+        }
+
+        try {
+            final byte[] bytes = decodeInline(info.data);
+            final String blobId = hash(bytes);
+            final File file = new File(mBlobDir, blobId);
+            if (!file.exists()) {
+                write(file, bytes);
+            }
+            info.blobId = blobId;
+            info.data = null;
+        } catch (IOException | IllegalArgumentException e) {
+            // Keep the payload inline, it is still usable from there
+            Log.w(TAG, String.format("Error extracting image [filename=%s]", info.filename), e);
+        }
+    }
+
+    /**
+     * Returns the raw image bytes, either decoded from the inline payload or read from the store.
+     */
+    public byte[] read(FileInfo info) throws IOException {
+        if (!TextUtils.isEmpty(info.data)) {
+            return decodeInline(info.data);
+        }
+        if (TextUtils.isEmpty(info.blobId) || mBlobDir == null) {
+            throw new FileNotFoundException(String.format("No image data [filename=%s]", info.filename));
+        }
+
+        try (RandomAccessFile input = new RandomAccessFile(new File(mBlobDir, info.blobId), "r")) {
+            final byte[] bytes = new byte[(int) input.length()];
+            input.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    public Observable<byte[]> load(FileInfo info) {
+        return Observable.defer(() -> {
+            try {
+                return Observable.just(read(info));
+            } catch (IOException e) {
+                return Observable.error(e);
+            }
+        });
+    }
+
+    private static byte[] decodeInline(String data) {
+        // Payloads are data URIs, e.g. "data:image/png;base64,..."
+        return Base64.decode(data.substring(data.indexOf(',') + 1), Base64.DEFAULT);
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(bytes);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Error storing image blob: " + file.getAbsolutePath());
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
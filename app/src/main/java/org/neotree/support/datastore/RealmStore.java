@@ -19,10 +19,12 @@
 
 package org.neotree.support.datastore;
 
+import android.os.Looper;
 import android.text.TextUtils;
 import android.util.Log;
 
 import org.joda.time.DateTime;
+import org.neotree.BuildConfig;
 import org.joda.time.format.ISODateTimeFormat;
 import org.neotree.model.firebase.Field;
 import org.neotree.model.firebase.Item;
@@ -31,12 +33,14 @@ import org.neotree.model.realm.AdminPassword;
 import org.neotree.model.realm.Session;
 import org.neotree.model.realm.SessionEntry;
 import org.neotree.model.realm.SessionValue;
+import org.neotree.model.realm.UploadItem;
+import org.neotree.player.DropdownOptions;
 import org.neotree.player.type.DataType;
 import org.neotree.player.type.FieldType;
 import org.neotree.player.type.ScreenType;
+import org.neotree.support.metrics.MetricsRegistry;
+import org.neotree.support.rx.RxHelper;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -50,6 +54,8 @@ import io.realm.RealmChangeListener;
 import io.realm.RealmQuery;
 import io.realm.RealmResults;
 import io.realm.Sort;
+import rx.Observable;
+import rx.functions.Func1;
 
 /**
  * Created by matteo on 13/09/2016.
@@ -59,6 +65,10 @@ public class RealmStore {
 
     private static final String TAG = RealmStore.class.getSimpleName();
 
+    private static final String METRIC_TRANSACTION_QUEUE = "realm.transaction.queue";
+    private static final String METRIC_TRANSACTION_EXECUTE = "realm.transaction.execute";
+    private static final String METRIC_TRANSACTION_COMPLETE = "realm.transaction.complete";
+
     private static MessageDigest sMessageDigest;
 
     public interface OnRealmTransactionListener {
@@ -77,11 +87,26 @@ public class RealmStore {
         }
     }
 
+    /**
+     * Wraps an async transaction to record how long it waited for the Realm worker and how long
+     * it took to run, completion is recorded from the success callback.
+     */
+    private static Realm.Transaction timed(long queuedAt, Realm.Transaction transaction) {
+        return bgRealm -> {
+            MetricsRegistry.get().stopTimer(METRIC_TRANSACTION_QUEUE, queuedAt);
+            final long start = MetricsRegistry.startTimer();
+            transaction.execute(bgRealm);
+            MetricsRegistry.get().stopTimer(METRIC_TRANSACTION_EXECUTE, start);
+        };
+    }
+
     public static Session createSession(Realm realm, String sessionId, String scriptId) {
         final Session session = new Session(sessionId, scriptId);
-        realm.executeTransactionAsync(bgRealm -> {
+        final long queuedAt = MetricsRegistry.startTimer();
+        realm.executeTransactionAsync(timed(queuedAt, bgRealm -> {
             bgRealm.copyToRealmOrUpdate(session);
-        }, () -> {
+        }), () -> {
+            MetricsRegistry.get().stopTimer(METRIC_TRANSACTION_COMPLETE, queuedAt);
             // Transaction was a success.
             Log.v(TAG, "createSession(): success");
         }, error -> {
@@ -92,10 +117,12 @@ public class RealmStore {
     }
 
     public static void finishSession(Realm realm, Session session) {
-        realm.executeTransactionAsync(bgRealm -> {
+        final long queuedAt = MetricsRegistry.startTimer();
+        realm.executeTransactionAsync(timed(queuedAt, bgRealm -> {
             session.setCompletedAt(DateTime.now().toString(ISODateTimeFormat.dateTimeNoMillis()));
             bgRealm.copyToRealmOrUpdate(session);
-        }, () -> {
+        }), () -> {
+            MetricsRegistry.get().stopTimer(METRIC_TRANSACTION_COMPLETE, queuedAt);
             // Transaction was a success.
             Log.v(TAG, "finishSession(): success");
         }, error -> {
@@ -105,7 +132,8 @@ public class RealmStore {
     }
 
     public static void storeValue(Realm realm, String scriptId, String sessionId, String sectionTitle, int position, SessionValue value) {
-        realm.executeTransactionAsync(bgRealm -> {
+        final long queuedAt = MetricsRegistry.startTimer();
+        realm.executeTransactionAsync(timed(queuedAt, bgRealm -> {
             String entryId = buildEntryId(scriptId, sessionId, position, value.getDataType(), value.getKey());
             RealmResults<SessionEntry> results = bgRealm.where(SessionEntry.class)
                     .equalTo("entryId", entryId)
@@ -117,7 +145,8 @@ public class RealmStore {
 
             SessionEntry entry = new SessionEntry(scriptId, sessionId, sectionTitle, position, value.getDataType(), value.getKey(), value.getLabel(), value);
             bgRealm.copyToRealmOrUpdate(entry);
-        }, () -> {
+        }), () -> {
+            MetricsRegistry.get().stopTimer(METRIC_TRANSACTION_COMPLETE, queuedAt);
             // Transaction was a success.
             Log.v(TAG, "storeValue(single): success");
         }, error -> {
@@ -127,7 +156,8 @@ public class RealmStore {
     }
 
     public static void storeValue(Realm realm, String scriptId, String sessionId, String sectionTitle, int position, String key, String label, ArrayList<SessionValue> values) {
-        realm.executeTransactionAsync(bgRealm -> {
+        final long queuedAt = MetricsRegistry.startTimer();
+        realm.executeTransactionAsync(timed(queuedAt, bgRealm -> {
             String entryId = buildEntryId(scriptId, sessionId, position, DataType.SET_ID.toString(), key);
             RealmResults<SessionEntry> results = bgRealm.where(SessionEntry.class)
                     .equalTo("entryId", entryId)
@@ -139,7 +169,8 @@ public class RealmStore {
 
             SessionEntry entry = new SessionEntry(scriptId, sessionId, sectionTitle, position, DataType.SET_ID.toString(), key, label, values);
             bgRealm.copyToRealmOrUpdate(entry);
-        }, () -> {
+        }), () -> {
+            MetricsRegistry.get().stopTimer(METRIC_TRANSACTION_COMPLETE, queuedAt);
             // Transaction was a success.
             Log.v(TAG, "storeValue(multiple) : success");
         }, error -> {
@@ -157,7 +188,47 @@ public class RealmStore {
 
     }
 
+    /**
+     * Runs the query on a background Realm and delivers its result on the main thread, the query
+     * must return detached objects (copyFromRealm) as its Realm is closed right after.
+     */
+    public static <T> Observable<T> read(Func1<Realm, T> query) {
+        return Observable.defer(() -> {
+            final Realm realm = Realm.getDefaultInstance();
+            try {
+                return Observable.just(query.call(realm));
+            } catch (RuntimeException e) {
+                return Observable.<T>error(e);
+            } finally {
+                realm.close();
+            }
+        }).compose(RxHelper.<T>applySchedulers());
+    }
+
+    public static Observable<Session> loadSessionAsync(String sessionId) {
+        return read(realm -> loadSession(realm, sessionId));
+    }
+
+    public static Observable<List<SessionEntry>> loadEntriesForSessionAsync(String sessionId, boolean confidential) {
+        return read(realm -> loadEntriesForSession(realm, sessionId, confidential));
+    }
+
+    public static Observable<List<SessionEntry>> loadEntriesForScriptAsync(String scriptId, boolean confidential) {
+        return read(realm -> loadEntriesForScript(realm, scriptId, confidential));
+    }
+
+    /**
+     * Flags detached reads on the main thread in debug builds, use the async variants instead.
+     */
+    private static void checkNotMainThread(String operation) {
+        if (BuildConfig.DEBUG && Looper.myLooper() == Looper.getMainLooper()) {
+            Log.e(TAG, String.format("Synchronous Realm read on the main thread [operation=%s]", operation),
+                    new IllegalStateException("Use the async read API"));
+        }
+    }
+
     public static Session loadSession(Realm realm, String sessionId) {
+        checkNotMainThread("loadSession");
         /*Session result = realm
                 .where(Session.class)
                 .equalTo("scriptTitle", sessionId)
@@ -186,6 +257,7 @@ public class RealmStore {
    }
 
     public static List<SessionEntry> loadEntriesForSession(Realm realm, String sessionId, boolean confidential) {
+        checkNotMainThread("loadEntriesForSession");
        /* RealmQuery<SessionEntry> query = realm
                 .where(SessionEntry.class)
                 .equalTo("scriptTitle", sessionId);*/
@@ -206,6 +278,7 @@ public class RealmStore {
     }
 
     public static List<SessionEntry> loadEntriesForScript(Realm realm, String scriptId, boolean confidential) {
+        checkNotMainThread("loadEntriesForScript");
         RealmQuery<SessionEntry> query = realm
                 .where(SessionEntry.class)
                 .equalTo("scriptId", scriptId);
@@ -241,13 +314,38 @@ public class RealmStore {
         return realm.where(AdminPassword.class).findFirst();
     }
 
+    public static void storeUploadItem(Realm realm, UploadItem item) {
+        realm.executeTransaction(bgRealm -> {
+            UploadItem existing = bgRealm.where(UploadItem.class)
+                    .equalTo("idempotencyKey", item.getIdempotencyKey())
+                    .findFirst();
+
+            // A session already accepted by the server is never sent again
+            if (existing != null && existing.isDone()) {
+                return;
+            }
+            bgRealm.copyToRealmOrUpdate(item);
+        });
+    }
+
+    public static RealmResults<UploadItem> loadUploadItems(Realm realm, RealmChangeListener<RealmResults<UploadItem>> callback) {
+        RealmResults<UploadItem> result = realm.where(UploadItem.class)
+                .sort("createdAt", Sort.DESCENDING)
+                .findAllAsync();
+
+        result.addChangeListener(callback);
+        return result;
+    }
+
     public static void deleteAllSessions(Realm realm, OnRealmTransactionListener listener) {
         // Delete all in a transaction
-        realm.executeTransactionAsync(bgRealm -> {
+        final long queuedAt = MetricsRegistry.startTimer();
+        realm.executeTransactionAsync(timed(queuedAt, bgRealm -> {
             RealmQuery<Session> query = bgRealm
                     .where(Session.class);
             deleteSessions(bgRealm, query);
-        }, () -> {
+        }), () -> {
+            MetricsRegistry.get().stopTimer(METRIC_TRANSACTION_COMPLETE, queuedAt);
             // Transaction was a success.
             Log.v(TAG, "deleteAllSessions() : success");
             listener.onTransactionDone();
@@ -259,12 +357,14 @@ public class RealmStore {
 
     public static void deleteIncompleteSessions(Realm realm, OnRealmTransactionListener listener) {
         // Delete all in a transaction
-        realm.executeTransactionAsync(bgRealm -> {
+        final long queuedAt = MetricsRegistry.startTimer();
+        realm.executeTransactionAsync(timed(queuedAt, bgRealm -> {
             RealmQuery<Session> query = bgRealm
                     .where(Session.class)
                     .isNull("completedAt");
             deleteSessions(bgRealm, query);
-        }, () -> {
+        }), () -> {
+            MetricsRegistry.get().stopTimer(METRIC_TRANSACTION_COMPLETE, queuedAt);
             // Transaction was a success.
             Log.v(TAG, "deleteIncompleteSessions() : success");
             listener.onTransactionDone();
@@ -276,13 +376,15 @@ public class RealmStore {
 
     public static void deleteSingleSession(String sessionId, Realm realm, OnRealmTransactionListener listener) {
         // Delete all in a transaction
-        realm.executeTransactionAsync(bgRealm -> {
+        final long queuedAt = MetricsRegistry.startTimer();
+        realm.executeTransactionAsync(timed(queuedAt, bgRealm -> {
             RealmQuery<Session> query = bgRealm
                     .where(Session.class)
                    // .equalTo("scriptTitle", sessionId);
                     .equalTo("sessionId", sessionId);
             deleteSessions(bgRealm, query);
-        }, () -> {
+        }), () -> {
+            MetricsRegistry.get().stopTimer(METRIC_TRANSACTION_COMPLETE, queuedAt);
             // Transaction was a success.
             Log.v(TAG, "deleteSingleSession() : success");
             listener.onTransactionDone();
@@ -379,19 +481,7 @@ public class RealmStore {
             return null;
         }
 
-        try {
-            BufferedReader reader = new BufferedReader(new StringReader(values));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] item = line.split(",");
-                String valueId = item[0].trim();
-                if (id.equals(valueId)) {
-                    return item[1].trim();
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "", e);
-        }
-        return null;
+        final DropdownOptions options = DropdownOptions.lenient(values);
+        return (options != null) ? options.labelOf(id) : null;
     }
 }
@@ -0,0 +1,512 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.datastore;
+
+import org.neotree.model.firebase.Diagnosis;
+import org.neotree.model.firebase.Field;
+import org.neotree.model.firebase.FileInfo;
+import org.neotree.model.firebase.Item;
+import org.neotree.model.firebase.Metadata;
+import org.neotree.model.firebase.Screen;
+import org.neotree.model.firebase.Section;
+import org.neotree.model.firebase.Symptom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a {@link ScriptBundle}.
+ *
+ * Layout: magic, format version, a string table and the bundle body. Every string in the body
+ * is a varint reference into the table (0 meaning null), so repeated keys, data types and
+ * labels are stored and decoded once. Fields are written in a fixed order, no names or
+ * reflection are involved when reading.
+ */
+public final class ScriptBundleCodec {
+
+    private static final int MAGIC = 0x4E545342; // "NTSB"
+    private static final int FORMAT_VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ScriptBundleCodec() {
+
+    }
+
+    public static void encode(ScriptBundle bundle, OutputStream out) throws IOException {
+        final Encoder encoder = new Encoder();
+        encoder.writeBundle(bundle);
+
+        final DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(FORMAT_VERSION);
+        writeVarInt(dataOut, encoder.mStrings.size());
+        for (String string : encoder.mStrings) {
+            final byte[] bytes = string.getBytes(UTF_8);
+            writeVarInt(dataOut, bytes.length);
+            dataOut.write(bytes);
+        }
+        encoder.mBody.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    public static ScriptBundle decode(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a script bundle");
+            }
+            final int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported script bundle version: " + version);
+            }
+            return new Decoder(buffer).readBundle();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated script bundle", e);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static class Encoder {
+
+        private final ArrayList<String> mStrings = new ArrayList<>();
+        private final HashMap<String, Integer> mStringIndex = new HashMap<>();
+        private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+        private final DataOutputStream mOut = new DataOutputStream(mBody);
+
+        void writeBundle(ScriptBundle bundle) throws IOException {
+            writeString(bundle.scriptId);
+            writeLong(bundle.scriptUpdatedAt);
+            mOut.writeLong(bundle.version);
+
+            writeCount(bundle.screens);
+            if (bundle.screens != null) {
+                for (Screen screen : bundle.screens) {
+                    writeScreen(screen);
+                }
+            }
+            writeCount(bundle.diagnosis);
+            if (bundle.diagnosis != null) {
+                for (Diagnosis diagnosis : bundle.diagnosis) {
+                    writeDiagnosis(diagnosis);
+                }
+            }
+            mOut.flush();
+        }
+
+        private void writeScreen(Screen s) throws IOException {
+            mOut.writeBoolean(s.skippable);
+            writeString(s.actionText);
+            writeString(s.condition);
+            writeString(s.contentText);
+            writeString(s.epicId);
+            writeString(s.infoText);
+            writeInteger(s.position);
+            writeString(s.refId);
+            writeString(s.screenId);
+            writeString(s.sectionTitle);
+            writeString(s.step);
+            writeString(s.storyId);
+            writeString(s.title);
+            writeString(s.triggers);
+            writeString(s.type);
+            writeLong(s.createdAt);
+            writeLong(s.updatedAt);
+            mOut.writeBoolean(s.metadata != null);
+            if (s.metadata != null) {
+                writeMetadata(s.metadata);
+            }
+        }
+
+        private void writeMetadata(Metadata m) throws IOException {
+            writeString(m.dataType);
+            mOut.writeBoolean(m.confidential);
+            writeString(m.key);
+            writeString(m.label);
+            writeString(m.maxValue);
+            writeString(m.minValue);
+            writeString(m.multiplier);
+            writeString(m.negativeLabel);
+            writeString(m.positiveLabel);
+            writeString(m.text1);
+            writeString(m.text2);
+            writeString(m.text3);
+            writeString(m.timerValue);
+            writeString(m.title1);
+            writeString(m.title2);
+            writeString(m.title3);
+            writeFileInfo(m.image1);
+            writeFileInfo(m.image2);
+            writeFileInfo(m.image3);
+
+            writeCount(m.fields);
+            if (m.fields != null) {
+                for (Field f : m.fields) {
+                    writeString(f.calculation);
+                    writeString(f.condition);
+                    mOut.writeBoolean(f.confidential);
+                    writeString(f.dataType);
+                    writeString(f.defaultValue);
+                    writeString(f.format);
+                    writeString(f.initialValue);
+                    writeString(f.key);
+                    writeString(f.label);
+                    writeString(f.maxValue);
+                    writeString(f.minValue);
+                    writeBoolean(f.optional);
+                    writeInteger(f.position);
+                    writeString(f.type);
+                    writeString(f.values);
+                }
+            }
+            writeCount(m.items);
+            if (m.items != null) {
+                for (Item i : m.items) {
+                    mOut.writeBoolean(i.checked);
+                    mOut.writeBoolean(i.confidential);
+                    writeString(i.dataType);
+                    mOut.writeBoolean(i.exclusive);
+                    writeString(i.id);
+                    writeString(i.key);
+                    writeString(i.label);
+                    writeInteger(i.position);
+                    writeString(i.summary);
+                }
+            }
+            writeCount(m.sections);
+            if (m.sections != null) {
+                for (Section section : m.sections) {
+                    writeString(section.title);
+                    writeString(section.body);
+                    writeFileInfo(section.image);
+                }
+            }
+        }
+
+        private void writeDiagnosis(Diagnosis d) throws IOException {
+            writeString(d.diagnosisId);
+            writeString(d.name);
+            writeString(d.description);
+            writeString(d.expression);
+            writeString(d.text1);
+            writeString(d.text2);
+            writeString(d.text3);
+            writeFileInfo(d.image1);
+            writeFileInfo(d.image2);
+            writeFileInfo(d.image3);
+            writeLong(d.createdAt);
+            writeLong(d.updatedAt);
+            writeCount(d.symptoms);
+            if (d.symptoms != null) {
+                for (Symptom symptom : d.symptoms) {
+                    writeString(symptom.type);
+                    writeString(symptom.name);
+                    writeString(symptom.weight);
+                    writeString(symptom.expression);
+                }
+            }
+        }
+
+        private void writeFileInfo(FileInfo info) throws IOException {
+            mOut.writeBoolean(info != null);
+            if (info != null) {
+                writeString(info.filename);
+                writeString(info.type);
+                writeString(info.data);
+                writeVarInt(mOut, info.size);
+                writeString(info.blobId);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(mOut, 0);
+                return;
+            }
+            Integer index = mStringIndex.get(value);
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.add(value);
+                mStringIndex.put(value, index);
+            }
+            writeVarInt(mOut, index + 1);
+        }
+
+        private void writeCount(List<?> list) throws IOException {
+            writeVarInt(mOut, (list != null) ? list.size() + 1 : 0);
+        }
+
+        private void writeBoolean(Boolean value) throws IOException {
+            mOut.writeByte((value == null) ? 0 : (value ? 2 : 1));
+        }
+
+        private void writeInteger(Integer value) throws IOException {
+            mOut.writeBoolean(value != null);
+            if (value != null) {
+                mOut.writeInt(value);
+            }
+        }
+
+        private void writeLong(Long value) throws IOException {
+            mOut.writeBoolean(value != null);
+            if (value != null) {
+                mOut.writeLong(value);
+            }
+        }
+    }
+
+    private static class Decoder {
+
+        private final ByteBuffer mBuffer;
+        private final String[] mStrings;
+
+        Decoder(ByteBuffer buffer) {
+            mBuffer = buffer;
+            mStrings = new String[readVarInt()];
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < mStrings.length; i++) {
+                final int length = readVarInt();
+                if (scratch.length < length) {
+                    scratch = new byte[length];
+                }
+                mBuffer.get(scratch, 0, length);
+                mStrings[i] = new String(scratch, 0, length, UTF_8);
+            }
+        }
+
+        ScriptBundle readBundle() {
+            final ScriptBundle bundle = new ScriptBundle(readString());
+            bundle.scriptUpdatedAt = readLong();
+            bundle.version = mBuffer.getLong();
+
+            int count = readCount();
+            if (count >= 0) {
+                bundle.screens = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    bundle.screens.add(readScreen());
+                }
+            }
+            count = readCount();
+            if (count >= 0) {
+                bundle.diagnosis = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    bundle.diagnosis.add(readDiagnosis());
+                }
+            }
+            return bundle;
+        }
+
+        private Screen readScreen() {
+            final Screen s = new Screen();
+            s.skippable = readBool();
+            s.actionText = readString();
+            s.condition = readString();
+            s.contentText = readString();
+            s.epicId = readString();
+            s.infoText = readString();
+            s.position = readInteger();
+            s.refId = readString();
+            s.screenId = readString();
+            s.sectionTitle = readString();
+            s.step = readString();
+            s.storyId = readString();
+            s.title = readString();
+            s.triggers = readString();
+            s.type = readString();
+            s.createdAt = readLong();
+            s.updatedAt = readLong();
+            if (readBool()) {
+                s.metadata = readMetadata();
+            }
+            return s;
+        }
+
+        private Metadata readMetadata() {
+            final Metadata m = new Metadata();
+            m.dataType = readString();
+            m.confidential = readBool();
+            m.key = readString();
+            m.label = readString();
+            m.maxValue = readString();
+            m.minValue = readString();
+            m.multiplier = readString();
+            m.negativeLabel = readString();
+            m.positiveLabel = readString();
+            m.text1 = readString();
+            m.text2 = readString();
+            m.text3 = readString();
+            m.timerValue = readString();
+            m.title1 = readString();
+            m.title2 = readString();
+            m.title3 = readString();
+            m.image1 = readFileInfo();
+            m.image2 = readFileInfo();
+            m.image3 = readFileInfo();
+
+            int count = readCount();
+            if (count >= 0) {
+                m.fields = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final Field f = new Field();
+                    f.calculation = readString();
+                    f.condition = readString();
+                    f.confidential = readBool();
+                    f.dataType = readString();
+                    f.defaultValue = readString();
+                    f.format = readString();
+                    f.initialValue = readString();
+                    f.key = readString();
+                    f.label = readString();
+                    f.maxValue = readString();
+                    f.minValue = readString();
+                    f.optional = readBoolean();
+                    f.position = readInteger();
+                    f.type = readString();
+                    f.values = readString();
+                    m.fields.add(f);
+                }
+            }
+            count = readCount();
+            if (count >= 0) {
+                m.items = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final Item item = new Item();
+                    item.checked = readBool();
+                    item.confidential = readBool();
+                    item.dataType = readString();
+                    item.exclusive = readBool();
+                    item.id = readString();
+                    item.key = readString();
+                    item.label = readString();
+                    item.position = readInteger();
+                    item.summary = readString();
+                    m.items.add(item);
+                }
+            }
+            count = readCount();
+            if (count >= 0) {
+                m.sections = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final Section section = new Section();
+                    section.title = readString();
+                    section.body = readString();
+                    section.image = readFileInfo();
+                    m.sections.add(section);
+                }
+            }
+            return m;
+        }
+
+        private Diagnosis readDiagnosis() {
+            final Diagnosis d = new Diagnosis();
+            d.diagnosisId = readString();
+            d.name = readString();
+            d.description = readString();
+            d.expression = readString();
+            d.text1 = readString();
+            d.text2 = readString();
+            d.text3 = readString();
+            d.image1 = readFileInfo();
+            d.image2 = readFileInfo();
+            d.image3 = readFileInfo();
+            d.createdAt = readLong();
+            d.updatedAt = readLong();
+            final int count = readCount();
+            if (count >= 0) {
+                d.symptoms = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final Symptom symptom = new Symptom();
+                    symptom.type = readString();
+                    symptom.name = readString();
+                    symptom.weight = readString();
+                    symptom.expression = readString();
+                    d.symptoms.add(symptom);
+                }
+            }
+            return d;
+        }
+
+        private FileInfo readFileInfo() {
+            if (!readBool()) {
+                return null;
+            }
+            final FileInfo info = new FileInfo();
+            info.filename = readString();
+            info.type = readString();
+            info.data = readString();
+            info.size = readVarInt();
+            info.blobId = readString();
+            return info;
+        }
+
+        private String readString() {
+            final int ref = readVarInt();
+            return (ref == 0) ? null : mStrings[ref - 1];
+        }
+
+        private int readCount() {
+            return readVarInt() - 1;
+        }
+
+        private boolean readBool() {
+            return mBuffer.get() != 0;
+        }
+
+        private Boolean readBoolean() {
+            final byte value = mBuffer.get();
+            return (value == 0) ? null : (value == 2);
+        }
+
+        private Integer readInteger() {
+            return readBool() ? mBuffer.getInt() : null;
+        }
+
+        private Long readLong() {
+            return readBool() ? mBuffer.getLong() : null;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mBuffer.get();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+}
@@ -0,0 +1,397 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.datastore;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.neotree.model.firebase.Diagnosis;
+import org.neotree.model.firebase.Screen;
+import org.neotree.model.firebase.Script;
+import org.neotree.player.DropdownOptions;
+import org.neotree.support.rx.RxFirebase;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * In-memory and on-disk cache of script bundles, so that scripts start without a round trip to
+ * Firebase and keep working offline. Bundles are stored with {@link ScriptBundleCodec}, embedded
+ * images are moved to the {@link ImageBlobStore}.
+ *
+ * Bundles are filled by {@link FirebaseStore} on first load and then patched in place from its
+ * child event subscriptions, each patch bumping the bundle version. The ADD events Firebase
+ * replays on every subscription repair a bundle that drifted from Firebase, entries whose
+ * updatedAt already matches are skipped. A bundle is dropped when the script's updatedAt no
+ * longer matches.
+ */
+public class ScriptCache {
+
+    private static final String TAG = ScriptCache.class.getSimpleName();
+
+    private static final String FILE_EXTENSION = ".bundle";
+    private static final long PERSIST_DELAY_MILLIS = 1000;
+
+    private static ScriptCache sInstance;
+
+    public static synchronized ScriptCache get() {
+        if (sInstance == null) {
+            sInstance = new ScriptCache();
+        }
+        return sInstance;
+    }
+
+    private final HashMap<String, ScriptBundle> mBundles = new HashMap<>();
+    private final HashMap<String, Long> mScriptUpdatedAt = new HashMap<>();
+    private final HashSet<String> mPendingPersists = new HashSet<>();
+    private final Scheduler.Worker mDiskWorker = Schedulers.from(Executors.newSingleThreadExecutor()).createWorker();
+
+    private File mCacheDir;
+
+    public synchronized void initialize(File cacheDir) {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "Error creating script cache directory: " + cacheDir.getAbsolutePath());
+            return;
+        }
+        mCacheDir = cacheDir;
+    }
+
+    public synchronized List<Screen> getScreens(String scriptId) {
+        final ScriptBundle bundle = getBundle(scriptId);
+        return (bundle != null && bundle.screens != null) ? new ArrayList<>(bundle.screens) : null;
+    }
+
+    public synchronized List<Diagnosis> getDiagnosis(String scriptId) {
+        final ScriptBundle bundle = getBundle(scriptId);
+        return (bundle != null && bundle.diagnosis != null) ? new ArrayList<>(bundle.diagnosis) : null;
+    }
+
+    public synchronized void putScreens(String scriptId, List<Screen> screens) {
+        ImageBlobStore.get().extract(screens);
+        DropdownOptions.precompile(screens);
+        final ScriptBundle bundle = getOrCreateBundle(scriptId);
+        bundle.screens = new ArrayList<>(screens);
+        bundle.version++;
+        persist(bundle);
+    }
+
+    public synchronized void putDiagnosis(String scriptId, List<Diagnosis> diagnosis) {
+        ImageBlobStore.get().extractDiagnosis(diagnosis);
+        final ScriptBundle bundle = getOrCreateBundle(scriptId);
+        bundle.diagnosis = new ArrayList<>(diagnosis);
+        bundle.version++;
+        persist(bundle);
+    }
+
+    /**
+     * Returns the bundle version, bumped on every update, or -1 when nothing is cached.
+     */
+    public synchronized long getVersion(String scriptId) {
+        final ScriptBundle bundle = mBundles.get(scriptId);
+        return (bundle != null) ? bundle.version : -1;
+    }
+
+    /**
+     * Applies a single screen child event to the cached bundle.
+     *
+     * @return true if the cached screens were changed
+     */
+    public synchronized boolean patchScreen(String scriptId, RxFirebase.FirebaseChildEvent<Screen> event) {
+        final ScriptBundle bundle = getBundle(scriptId);
+        if (bundle == null || bundle.screens == null) {
+            // Not loaded yet, the first load fetches the whole collection
+            return false;
+        }
+
+        final int index = indexOfScreen(bundle.screens, event.key);
+        switch (event.eventType) {
+            case RxFirebase.FirebaseChildEvent.TYPE_ADD:
+            case RxFirebase.FirebaseChildEvent.TYPE_CHANGE:
+                if (event.value == null) {
+                    return false;
+                }
+                if (event.value.screenId == null) {
+                    event.value.screenId = event.key;
+                }
+                if (index >= 0 && isSameRevision(bundle.screens.get(index).updatedAt, event.value.updatedAt)
+                        && Objects.equals(bundle.screens.get(index).position, event.value.position)) {
+                    // Replayed for a screen the cached bundle already holds
+                    return false;
+                }
+                ImageBlobStore.get().extract(Collections.singletonList(event.value));
+                DropdownOptions.precompile(Collections.singletonList(event.value));
+                if (index >= 0) {
+                    bundle.screens.set(index, event.value);
+                } else {
+                    bundle.screens.add(event.value);
+                }
+                Collections.sort(bundle.screens, FirebaseStore.SCREEN_COMPARATOR);
+                break;
+            case RxFirebase.FirebaseChildEvent.TYPE_REMOVE:
+                if (index < 0) {
+                    return false;
+                }
+                bundle.screens.remove(index);
+                break;
+            case RxFirebase.FirebaseChildEvent.TYPE_MOVE:
+                Collections.sort(bundle.screens, FirebaseStore.SCREEN_COMPARATOR);
+                break;
+        }
+        bundle.version++;
+        schedulePersist(bundle);
+        return true;
+    }
+
+    /**
+     * Applies a single diagnosis child event to the cached bundle.
+     *
+     * @return true if the cached diagnosis were changed
+     */
+    public synchronized boolean patchDiagnosis(String scriptId, RxFirebase.FirebaseChildEvent<Diagnosis> event) {
+        final ScriptBundle bundle = getBundle(scriptId);
+        if (bundle == null || bundle.diagnosis == null) {
+            return false;
+        }
+
+        int index = -1;
+        for (int i = 0; i < bundle.diagnosis.size(); i++) {
+            if (event.key.equals(bundle.diagnosis.get(i).diagnosisId)) {
+                index = i;
+                break;
+            }
+        }
+
+        switch (event.eventType) {
+            case RxFirebase.FirebaseChildEvent.TYPE_ADD:
+            case RxFirebase.FirebaseChildEvent.TYPE_CHANGE:
+                if (event.value == null) {
+                    return false;
+                }
+                if (event.value.diagnosisId == null) {
+                    event.value.diagnosisId = event.key;
+                }
+                if (index >= 0 && isSameRevision(bundle.diagnosis.get(index).updatedAt, event.value.updatedAt)) {
+                    return false;
+                }
+                ImageBlobStore.get().extractDiagnosis(Collections.singletonList(event.value));
+                if (index >= 0) {
+                    bundle.diagnosis.set(index, event.value);
+                } else {
+                    bundle.diagnosis.add(event.value);
+                }
+                break;
+            case RxFirebase.FirebaseChildEvent.TYPE_REMOVE:
+                if (index < 0) {
+                    return false;
+                }
+                bundle.diagnosis.remove(index);
+                break;
+            default:
+                // Diagnosis order is not significant
+                return false;
+        }
+        bundle.version++;
+        schedulePersist(bundle);
+        return true;
+    }
+
+    /**
+     * Drops the cached bundle when it was built from a different revision of the script. The
+     * revision is recorded right away, so bundles created or loaded after this call are checked
+     * against it even while the check of a bundle on disk is still pending.
+     */
+    public synchronized void validate(String scriptId, Script script) {
+        if (script == null) {
+            return;
+        }
+        mScriptUpdatedAt.put(scriptId, script.updatedAt);
+
+        final ScriptBundle bundle = mBundles.get(scriptId);
+        if (bundle != null) {
+            checkRevision(bundle);
+        } else {
+            // Loading runs the same check, keep reading the bundle from disk off the calling (main) thread
+            mDiskWorker.schedule(() -> {
+                synchronized (ScriptCache.this) {
+                    getBundle(scriptId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns false and drops the bundle when it belongs to another revision of the script. A
+     * bundle without a revision was filled before the script was known and adopts the current one.
+     */
+    private boolean checkRevision(ScriptBundle bundle) {
+        final Long scriptUpdatedAt = mScriptUpdatedAt.get(bundle.scriptId);
+        if (scriptUpdatedAt == null) {
+            return true;
+        }
+        if (bundle.scriptUpdatedAt == null) {
+            bundle.scriptUpdatedAt = scriptUpdatedAt;
+            schedulePersist(bundle);
+            return true;
+        }
+        if (!bundle.scriptUpdatedAt.equals(scriptUpdatedAt)) {
+            Log.d(TAG, String.format("Script changed, dropping cached bundle [scriptId=%s]", bundle.scriptId));
+            drop(bundle.scriptId);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void remove(String scriptId) {
+        mScriptUpdatedAt.remove(scriptId);
+        drop(scriptId);
+    }
+
+    private void drop(String scriptId) {
+        mBundles.remove(scriptId);
+        final File file = bundleFile(scriptId);
+        if (file != null) {
+            mDiskWorker.schedule(() -> {
+                if (file.exists() && !file.delete()) {
+                    Log.w(TAG, "Error deleting cached bundle: " + file.getAbsolutePath());
+                }
+            });
+        }
+    }
+
+    // Entries without a timestamp cannot be compared, they are always applied
+    private static boolean isSameRevision(Long cachedUpdatedAt, Long updatedAt) {
+        return cachedUpdatedAt != null && cachedUpdatedAt.equals(updatedAt);
+    }
+
+    private static int indexOfScreen(List<Screen> screens, String screenId) {
+        for (int i = 0; i < screens.size(); i++) {
+            if (screenId.equals(screens.get(i).screenId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ScriptBundle getBundle(String scriptId) {
+        ScriptBundle bundle = mBundles.get(scriptId);
+        if (bundle == null) {
+            bundle = read(scriptId);
+            if (bundle != null) {
+                mBundles.put(scriptId, bundle);
+                if (!checkRevision(bundle)) {
+                    return null;
+                }
+            }
+        }
+        return bundle;
+    }
+
+    private ScriptBundle getOrCreateBundle(String scriptId) {
+        ScriptBundle bundle = getBundle(scriptId);
+        if (bundle == null) {
+            bundle = new ScriptBundle(scriptId);
+            bundle.scriptUpdatedAt = mScriptUpdatedAt.get(scriptId);
+            mBundles.put(scriptId, bundle);
+        }
+        return bundle;
+    }
+
+    private ScriptBundle read(String scriptId) {
+        final File file = bundleFile(scriptId);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            // Map the whole bundle and decode it in one pass
+            final FileChannel channel = input.getChannel();
+            final ScriptBundle bundle = ScriptBundleCodec.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            if (bundle.screens != null) {
+                // Bundles read back from disk skip the fetch path, parse their dropdowns here
+                DropdownOptions.precompile(bundle.screens);
+            }
+            Log.d(TAG, String.format("Loaded cached bundle [scriptId=%s, bytes=%d, time=%dms]",
+                    scriptId, file.length(), SystemClock.elapsedRealtime() - start));
+            return bundle;
+        } catch (IOException e) {
+            Log.w(TAG, String.format("Discarding unreadable cached bundle [scriptId=%s]", scriptId), e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    private void schedulePersist(ScriptBundle bundle) {
+        // Child events arrive in bursts, write the bundle once the burst is over
+        if (mPendingPersists.add(bundle.scriptId)) {
+            mDiskWorker.schedule(() -> {
+                synchronized (ScriptCache.this) {
+                    mPendingPersists.remove(bundle.scriptId);
+                }
+                persist(bundle);
+            }, PERSIST_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void persist(ScriptBundle bundle) {
+        final File file = bundleFile(bundle.scriptId);
+        if (file == null) {
+            return;
+        }
+
+        // Write to a temporary file first, a half written bundle must never replace a good one
+        mDiskWorker.schedule(() -> {
+            final File tmpFile = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile))) {
+                synchronized (ScriptCache.this) {
+                    ScriptBundleCodec.encode(bundle, out);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing cached bundle: " + file.getAbsolutePath(), e);
+                return;
+            }
+            if (!tmpFile.renameTo(file)) {
+                Log.e(TAG, "Error replacing cached bundle: " + file.getAbsolutePath());
+            }
+        });
+    }
+
+    private File bundleFile(String scriptId) {
+        return (mCacheDir != null) ? new File(mCacheDir, scriptId + FILE_EXTENSION) : null;
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package org.neotree.support.metrics;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.neotree.support.android.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records frames over budget and main thread stalls, meant for staging builds only.
+ *
+ * Every message dispatched on the main looper is timed, a watchdog thread samples the main thread
+ * stack when a message runs past the threshold. Stalls are attributed to the screen on display and
+ * to the operation found on the sampled stack, and ranked per script in report().
+ */
+public class JankMonitor {
+
+    private static final String TAG = JankMonitor.class.getSimpleName();
+
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+    private static final String UNKNOWN = "unknown";
+
+    private static JankMonitor sInstance;
+
+    public static synchronized JankMonitor get() {
+        if (sInstance == null) {
+            sInstance = new JankMonitor();
+        }
+        return sInstance;
+    }
+
+    private final Map<String, Map<String, ScreenStats>> mScripts = new HashMap<>();
+
+    private boolean mStarted;
+    private long mThresholdMillis;
+    private Handler mWatchdog;
+    private Thread mMainThread;
+    private boolean mFramesRunning;
+    private long mLastFrameNanos;
+    private long mDispatchStartNanos;
+
+    private volatile int mDispatchSequence;
+    private volatile int mSampledSequence;
+    private volatile String mSampledOperation;
+
+    private volatile String mScriptId;
+    private volatile String mScreenId;
+    private volatile String mScreenType;
+    private volatile String mScreenTitle;
+
+    private final Runnable mSampler = () -> {
+        final int sequence = mDispatchSequence;
+        mSampledOperation = classify(mMainThread.getStackTrace());
+        mSampledSequence = sequence;
+    };
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mFramesRunning) {
+                return;
+            }
+            if (mLastFrameNanos > 0) {
+                final long duration = frameTimeNanos - mLastFrameNanos;
+                if (duration >= 2 * FRAME_NANOS) {
+                    MetricsRegistry.get().record("frame.duration", duration / 1000);
+                    MetricsRegistry.get().increment("frame.dropped", duration / FRAME_NANOS - 1);
+                }
+            }
+            mLastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    // Frames are only observed while an activity is in the foreground
+    private final Application.ActivityLifecycleCallbacks mLifecycleCallbacks = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityResumed(Activity activity) {
+            startFrames();
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            stopFrames();
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+
+        }
+    };
+
+    private JankMonitor() {
+
+    }
+
+    /**
+     * Starts monitoring, must be called on the main thread.
+     */
+    public synchronized void start(Application application, long thresholdMillis) {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        mThresholdMillis = thresholdMillis;
+        mMainThread = Looper.getMainLooper().getThread();
+
+        final HandlerThread watchdog = new HandlerThread(TAG);
+        watchdog.start();
+        mWatchdog = new Handler(watchdog.getLooper());
+
+        // The looper logs ">>>>> Dispatching to ..." and "<<<<< Finished to ..." around every message
+        Looper.getMainLooper().setMessageLogging(message -> {
+            if (message.startsWith(">>>>>")) {
+                onDispatchStarted();
+            } else if (message.startsWith("<<<<<")) {
+                onDispatchFinished();
+            }
+        });
+        application.registerActivityLifecycleCallbacks(mLifecycleCallbacks);
+        Logger.i(TAG, "Monitoring main thread stalls over %d ms", thresholdMillis);
+    }
+
+    public synchronized boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * Sets the screen stalls are attributed to, null screenId when no script screen is shown.
+     */
+    public void setScreen(String scriptId, String screenId, String type, String title) {
+        mScriptId = scriptId;
+        mScreenId = screenId;
+        mScreenType = type;
+        mScreenTitle = title;
+    }
+
+    private void startFrames() {
+        if (mFramesRunning) {
+            return;
+        }
+        mFramesRunning = true;
+        // The first frame after resuming only sets the baseline, time spent paused is not a dropped frame
+        mLastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    private void stopFrames() {
+        mFramesRunning = false;
+        Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+    }
+
+    private void onDispatchStarted() {
+        mDispatchSequence++;
+        mDispatchStartNanos = System.nanoTime();
+        mWatchdog.postDelayed(mSampler, mThresholdMillis);
+    }
+
+    private void onDispatchFinished() {
+        mWatchdog.removeCallbacks(mSampler);
+        if (mDispatchStartNanos == 0) {
+            return;
+        }
+
+        final long durationNanos = System.nanoTime() - mDispatchStartNanos;
+        mDispatchStartNanos = 0;
+        if (TimeUnit.NANOSECONDS.toMillis(durationNanos) >= mThresholdMillis) {
+            final String operation = (mSampledSequence == mDispatchSequence && mSampledOperation != null)
+                    ? mSampledOperation : UNKNOWN;
+            onStall(TimeUnit.NANOSECONDS.toMillis(durationNanos), operation);
+        }
+    }
+
+    private void onStall(long durationMillis, String operation) {
+        final String scriptId = mScriptId;
+        final String screenId = mScreenId;
+        Logger.w(TAG, "Main thread stalled for %d ms [script=%s, screen=%s, type=%s, operation=%s]",
+                durationMillis, scriptId, screenId, mScreenType, operation);
+
+        MetricsRegistry.get().record("jank.stall", durationMillis * 1000);
+        MetricsRegistry.get().increment("jank.stall." + operation);
+
+        if (scriptId == null || screenId == null) {
+            return;
+        }
+        synchronized (this) {
+            Map<String, ScreenStats> screens = mScripts.get(scriptId);
+            if (screens == null) {
+                screens = new HashMap<>();
+                mScripts.put(scriptId, screens);
+            }
+            ScreenStats stats = screens.get(screenId);
+            if (stats == null) {
+                stats = new ScreenStats(screenId);
+                screens.put(screenId, stats);
+            }
+            stats.type = mScreenType;
+            stats.title = mScreenTitle;
+            stats.record(durationMillis, operation);
+        }
+    }
+
+    /**
+     * Screens of the script ranked by total stall time, slowest first.
+     */
+    public synchronized ObjectNode report(String scriptId) {
+        final ObjectNode root = JsonNodeFactory.instance.objectNode();
+        root.put("scriptId", scriptId);
+        root.put("thresholdMillis", mThresholdMillis);
+
+        final List<ScreenStats> ranking = new ArrayList<>();
+        final Map<String, ScreenStats> screens = mScripts.get(scriptId);
+        if (screens != null) {
+            ranking.addAll(screens.values());
+        }
+        Collections.sort(ranking, (left, right) -> Long.compare(right.totalMillis, left.totalMillis));
+
+        final ArrayNode jsonScreens = root.putArray("screens");
+        for (ScreenStats stats : ranking) {
+            stats.toJson(jsonScreens.addObject());
+        }
+        return root;
+    }
+
+    public void logReport(String scriptId) {
+        // Building the report walks every recorded stall, skip it when the line would be dropped
+        if (isStarted() && Logger.isLoggable(TAG, Log.INFO)) {
+            Logger.i(TAG, "Jank report: %s", report(scriptId));
+        }
+    }
+
+    /**
+     * Names the operation from the innermost frame of a known kind, falls back to the innermost
+     * app frame.
+     */
+    static String classify(StackTraceElement[] stack) {
+        String appFrame = null;
+        for (StackTraceElement element : stack) {
+            final String className = element.getClassName();
+            if (className.startsWith("io.realm.")) {
+                return "realm";
+            } else if (className.startsWith("org.antlr.") || className.startsWith("org.neotree.grammar.")) {
+                return "parse";
+            } else if (className.startsWith("org.neotree.player.expression.")) {
+                return "expression";
+            } else if (className.startsWith("android.graphics.BitmapFactory")) {
+                return "image_decode";
+            } else if (className.startsWith("com.fasterxml.jackson.")) {
+                return "json";
+            } else if (className.startsWith("android.view.LayoutInflater")) {
+                return "inflate";
+            } else if (className.equals("android.view.ViewRootImpl")
+                    && element.getMethodName().startsWith("perform")) {
+                return "layout";
+            } else if (appFrame == null && className.startsWith("org.neotree.")) {
+                appFrame = className.substring(className.lastIndexOf('.') + 1) + "." + element.getMethodName();
+            }
+        }
+        return (appFrame != null) ? appFrame : UNKNOWN;
+    }
+
+    private static class ScreenStats {
+
+        final String screenId;
+        String type;
+        String title;
+        long stalls;
+        long totalMillis;
+        long maxMillis;
+        final Map<String, Long> operations = new TreeMap<>();
+
+        ScreenStats(String screenId) {
+            this.screenId = screenId;
+        }
+
+        void record(long durationMillis, String operation) {
+            stalls++;
+            totalMillis += durationMillis;
+            maxMillis = Math.max(maxMillis, durationMillis);
+            final Long count = operations.get(operation);
+            operations.put(operation, (count != null) ? count + 1 : 1);
+        }
+
+        void toJson(ObjectNode node) {
+            node.put("screenId", screenId);
+            node.put("type", type);
+            node.put("title", title);
+            node.put("stalls", stalls);
+            node.put("totalMillis", totalMillis);
+            node.put("maxMillis", maxMillis);
+            final ObjectNode jsonOperations = node.putObject("operations");
+            for (Map.Entry<String, Long> operation : operations.entrySet()) {
+                jsonOperations.put(operation.getKey(), operation.getValue());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.metrics;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.neotree.BuildConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * In-app counters, timers and histograms for the hot paths.
+ *
+ * Timers are histograms of durations in microseconds. Snapshots are persisted to a local file,
+ * accumulating across runs of the same release, and are added to the JSON export.
+ */
+public class MetricsRegistry {
+
+    private static final String TAG = MetricsRegistry.class.getSimpleName();
+
+    private static final long PERSIST_DELAY_MILLIS = 10000;
+    private static final int BUCKET_COUNT = 32;
+
+    private static MetricsRegistry sInstance;
+
+    public static synchronized MetricsRegistry get() {
+        if (sInstance == null) {
+            sInstance = new MetricsRegistry();
+        }
+        return sInstance;
+    }
+
+    private final ObjectMapper mMapper = new ObjectMapper();
+    private final Scheduler.Worker mDiskWorker = Schedulers.from(Executors.newSingleThreadExecutor()).createWorker();
+
+    private final Map<String, Long> mCounters = new TreeMap<>();
+    private final Map<String, Histogram> mHistograms = new TreeMap<>();
+
+    // Wall clock millis, this may run before Joda time zones are available
+    private long mSince = System.currentTimeMillis();
+    private File mFile;
+    private boolean mPersistPending;
+
+    private MetricsRegistry() {
+
+    }
+
+    /**
+     * Restores the snapshot persisted by an earlier run of the same release, runs on the caller.
+     * Values recorded before this call are merged with the restored ones.
+     */
+    public void initialize(File file) {
+        // Parse outside the lock so the hot paths keep recording while the file is read
+        final JsonNode root = restore(file);
+
+        synchronized (this) {
+            mFile = file;
+            if (root != null) {
+                mSince = Math.min(mSince, root.path("since").asLong(mSince));
+                final Iterator<Map.Entry<String, JsonNode>> counters = root.path("counters").fields();
+                while (counters.hasNext()) {
+                    final Map.Entry<String, JsonNode> counter = counters.next();
+                    final Long count = mCounters.get(counter.getKey());
+                    mCounters.put(counter.getKey(), counter.getValue().asLong() + ((count != null) ? count : 0));
+                }
+                final Iterator<Map.Entry<String, JsonNode>> histograms = root.path("histograms").fields();
+                while (histograms.hasNext()) {
+                    final Map.Entry<String, JsonNode> entry = histograms.next();
+                    final Histogram histogram = Histogram.fromJson(entry.getValue());
+                    final Histogram recorded = mHistograms.get(entry.getKey());
+                    if (recorded != null) {
+                        histogram.merge(recorded);
+                    }
+                    mHistograms.put(entry.getKey(), histogram);
+                }
+            }
+            // Values recorded before the file was known have not been scheduled for persistence
+            if (!mCounters.isEmpty() || !mHistograms.isEmpty()) {
+                schedulePersist();
+            }
+        }
+    }
+
+    private JsonNode restore(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            final JsonNode root = mMapper.readTree(file);
+            if (root.path("versionCode").asInt() != BuildConfig.VERSION_CODE) {
+                Log.i(TAG, "Discarding metrics of a previous release");
+                return null;
+            }
+            return root;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error restoring metrics, starting over", e);
+            return null;
+        }
+    }
+
+    public static long startTimer() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records the time elapsed since startTimer() returned startNanos.
+     */
+    public void stopTimer(String name, long startNanos) {
+        record(name, (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+    }
+
+    public void increment(String name) {
+        increment(name, 1);
+    }
+
+    public synchronized void increment(String name, long delta) {
+        final Long count = mCounters.get(name);
+        mCounters.put(name, (count != null) ? count + delta : delta);
+        schedulePersist();
+    }
+
+    public synchronized void record(String name, long value) {
+        Histogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            mHistograms.put(name, histogram);
+        }
+        histogram.record(value);
+        schedulePersist();
+    }
+
+    public synchronized ObjectNode snapshot() {
+        final ObjectNode root = mMapper.createObjectNode();
+        root.put("since", mSince);
+        root.put("taken", System.currentTimeMillis());
+        root.put("versionName", BuildConfig.VERSION_NAME);
+        root.put("versionCode", BuildConfig.VERSION_CODE);
+
+        final ObjectNode device = root.putObject("device");
+        device.put("manufacturer", Build.MANUFACTURER);
+        device.put("model", Build.MODEL);
+        device.put("sdk", Build.VERSION.SDK_INT);
+
+        final ObjectNode counters = root.putObject("counters");
+        for (Map.Entry<String, Long> counter : mCounters.entrySet()) {
+            counters.put(counter.getKey(), counter.getValue());
+        }
+        final ObjectNode histograms = root.putObject("histograms");
+        for (Map.Entry<String, Histogram> histogram : mHistograms.entrySet()) {
+            histogram.getValue().toJson(histograms.putObject(histogram.getKey()));
+        }
+        return root;
+    }
+
+    private void schedulePersist() {
+        // Metrics change all the time, write them at most once per delay
+        if (mFile == null || mPersistPending) {
+            return;
+        }
+        mPersistPending = true;
+        mDiskWorker.schedule(() -> {
+            final ObjectNode snapshot;
+            synchronized (MetricsRegistry.this) {
+                mPersistPending = false;
+                snapshot = snapshot();
+            }
+            persist(snapshot);
+        }, PERSIST_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void persist(ObjectNode snapshot) {
+        final File tmpFile = new File(mFile.getPath() + ".tmp");
+        try {
+            mMapper.writeValue(tmpFile, snapshot);
+            if (!tmpFile.renameTo(mFile)) {
+                throw new IOException("Error renaming metrics file: " + tmpFile.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error persisting metrics", e);
+        }
+    }
+
+    /**
+     * Count, sum and range of the recorded values, with power of two buckets: bucket n holds the
+     * values from 2^(n-1) up to 2^n, bucket 0 the values up to zero.
+     */
+    static class Histogram {
+
+        long count;
+        long sum;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        final long[] buckets = new long[BUCKET_COUNT];
+
+        void record(long value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+
+            final int bucket = (value <= 0) ? 0 : 64 - Long.numberOfLeadingZeros(value);
+            buckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+        }
+
+        void merge(Histogram other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] += other.buckets[i];
+            }
+        }
+
+        void toJson(ObjectNode node) {
+            node.put("count", count);
+            node.put("sum", sum);
+            node.put("min", (count > 0) ? min : 0);
+            node.put("max", (count > 0) ? max : 0);
+            node.put("mean", (count > 0) ? sum / count : 0);
+            final ArrayNode values = node.putArray("buckets");
+            for (long bucket : buckets) {
+                values.add(bucket);
+            }
+        }
+
+        static Histogram fromJson(JsonNode node) {
+            final Histogram histogram = new Histogram();
+            histogram.count = node.path("count").asLong();
+            histogram.sum = node.path("sum").asLong();
+            if (histogram.count > 0) {
+                histogram.min = node.path("min").asLong();
+                histogram.max = node.path("max").asLong();
+            }
+            final JsonNode values = node.path("buckets");
+            for (int i = 0; i < BUCKET_COUNT && i < values.size(); i++) {
+                histogram.buckets[i] = values.get(i).asLong();
+            }
+            return histogram;
+        }
+    }
+
+}
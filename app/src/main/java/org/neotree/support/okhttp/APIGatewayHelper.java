@@ -21,128 +21,98 @@
 
 package org.neotree.support.okhttp;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
 
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
+/**
+ * Typed client for the NeoTree API gateway, backed by the application wide {@link OkHttpClient}.
+ */
 public class APIGatewayHelper {
 
+    public static final String API_KEY = "<api key goes here>";
+    public static final String SESSION_UPLOAD_URL = "<post url>";
 
-    OkHttpClient client = new OkHttpClient();
-
-    public String txtString;
-
-    public String apiKey = "<api key goes here>";
-    public String auth0token = "<auth 0 current token goes here with long exp for testing>";
-
+    public static final String HEADER_API_KEY = "x-api-key";
+    public static final String HEADER_AUTHORIZATION = "Authorization";
+    public static final String HEADER_IDEMPOTENCY_KEY = "Idempotency-Key";
 
-    public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private final OkHttpClient mClient;
+    private final String mApiKey;
+    private final ObjectMapper mMapper = new ObjectMapper();
 
-    public boolean getFromApi(ObjectNode requestPayload, String endpointUrl) {
+    public APIGatewayHelper(OkHttpClient client, String apiKey) {
+        mClient = client;
+        mApiKey = apiKey;
+    }
 
-        try {
-            makeApiGETCall(endpointUrl);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return true;
+    /**
+     * Posts a JSON payload and returns the HTTP status code, the response body is discarded.
+     */
+    public int postJson(String url, JsonNode payload, String bearerToken, String idempotencyKey) throws IOException {
+        return post(url, JsonRequestBody.create(mMapper, payload), bearerToken, idempotencyKey);
     }
 
-    public boolean postToApi(ObjectNode requestPayload, String endpointUrl, String BearerKey) {
+    public int post(String url, RequestBody body, String bearerToken, String idempotencyKey) throws IOException {
+        final Request.Builder request = newRequest(url, bearerToken).post(body);
+        if (!isEmpty(idempotencyKey)) {
+            request.header(HEADER_IDEMPOTENCY_KEY, idempotencyKey);
+        }
 
-        try {
-            makeApiPOSTCall(endpointUrl, BearerKey, requestPayload.toString());
-            int size = requestPayload.size();
-            //makeApiPOSTCall(endpointUrl, postBody);
-        } catch (IOException e) {
-            e.printStackTrace();
+        try (Response response = mClient.newCall(request.build()).execute()) {
+            return response.code();
         }
-        return true;
     }
 
-     //ObjectNode payload
-
-    public void makeApiGETCall(String url) throws IOException {
-
-        OkHttpClient client = new OkHttpClient();
-
-        Request request = new Request.Builder()
-                .header("Content-Type", "application/json")
-                .header("x-api-key", apiKey)
-                .header("Authorization", auth0token)
-                .url(url)
-                .build();
-
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                call.cancel();
-            }
-
-            @Override
-            public void onResponse(Call call, Response response) throws IOException {
-
-                final String myResponse = response.body().string();
-
-                txtString = myResponse;
+    /**
+     * Fetches and parses a JSON document, non successful responses are reported as {@link ApiException}.
+     */
+    public JsonNode getJson(String url, String bearerToken) throws IOException {
+        final Request request = newRequest(url, bearerToken).get().build();
 
+        try (Response response = mClient.newCall(request).execute()) {
+            final ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new ApiException(response.code(), String.format("GET %s failed", url));
             }
-        });
+            return mMapper.readTree(body.byteStream());
+        }
     }
 
-    public void makeApiPOSTCall(String postUrl, String authKey, String postBody) throws IOException {
-        if (authKey != null) {
-            if (authKey.length() > 1) {
-                auth0token = authKey;
-            }
+    private Request.Builder newRequest(String url, String bearerToken) {
+        final Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header(HEADER_API_KEY, mApiKey);
+        if (!isEmpty(bearerToken)) {
+            builder.header(HEADER_AUTHORIZATION, "Bearer " + bearerToken);
         }
-        OkHttpClient client = new OkHttpClient();
-
-        RequestBody body = RequestBody.create(JSON, postBody);
-
-        Request request = new Request.Builder()
-                .header("Content-Type", "application/json")
-                .header("x-api-key", apiKey)
-                .header("Authorization", "Bearer " + auth0token)
-                .url(postUrl)
-                .post(body)
-                .build();
-
-        String APIKey = apiKey;
-
-
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                call.cancel();
-            }
-
-            @Override
-            public void onResponse(Call call, Response response) throws IOException {
-                //Log.d("TAG",response.body().string());
-                txtString = response.toString();
-            }
-        });
+        return builder;
     }
 
+    // Plain Java so the client can be exercised in JVM tests
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
 
+    public static class ApiException extends IOException {
 
+        private final int mCode;
 
-    // Write JSON output
-     //   mapper.writeValue(exportFile, root);
-   // }
+        public ApiException(int code, String message) {
+            super(String.format("%s [code=%d]", message, code));
+            mCode = code;
+        }
 
+        public int getCode() {
+            return mCode;
+        }
+    }
 
 }
-
@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.okhttp;
+
+import org.neotree.support.metrics.MetricsRegistry;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Compresses outgoing request bodies with gzip and sets the matching Content-Encoding header.
+ *
+ * Body sizes before and after compression are counted into the metrics export (http.gzip.*), so
+ * the effect of api_gzip_requests can be read from real uploads.
+ */
+public class GzipRequestInterceptor implements Interceptor {
+
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    public static final String ENCODING_GZIP = "gzip";
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        final Request request = chain.request();
+        if (request.body() == null || request.header(HEADER_CONTENT_ENCODING) != null) {
+            return chain.proceed(request);
+        }
+
+        return chain.proceed(request.newBuilder()
+                .header(HEADER_CONTENT_ENCODING, ENCODING_GZIP)
+                .method(request.method(), gzip(request.body()))
+                .build());
+    }
+
+    private static RequestBody gzip(final RequestBody body) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() {
+                // Unknown until compressed, the body is sent chunked
+                return -1;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                final CountingSink compressed = new CountingSink(sink);
+                final CountingSink uncompressed = new CountingSink(new GzipSink(compressed));
+                BufferedSink gzipSink = Okio.buffer(uncompressed);
+                body.writeTo(gzipSink);
+                gzipSink.close();
+
+                MetricsRegistry.get().increment("http.gzip.requests");
+                MetricsRegistry.get().increment("http.gzip.bytes_in", uncompressed.mByteCount);
+                MetricsRegistry.get().increment("http.gzip.bytes_out", compressed.mByteCount);
+            }
+        };
+    }
+
+    private static class CountingSink extends ForwardingSink {
+
+        long mByteCount;
+
+        CountingSink(Sink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            mByteCount += byteCount;
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.okhttp;
+
+import org.neotree.BuildConfig;
+import org.neotree.support.android.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Collects latency and traffic counters for every call made through the shared API client.
+ */
+public class HttpMetrics implements EventListener.Factory {
+
+    private static final String TAG = HttpMetrics.class.getSimpleName();
+
+    private final AtomicLong mCallCount = new AtomicLong();
+    private final AtomicLong mFailedCount = new AtomicLong();
+    private final AtomicLong mTotalLatencyMillis = new AtomicLong();
+    private final AtomicLong mConnectionCount = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+
+    @Override
+    public EventListener create(Call call) {
+        return new CallListener();
+    }
+
+    public long getCallCount() {
+        return mCallCount.get();
+    }
+
+    public long getFailedCount() {
+        return mFailedCount.get();
+    }
+
+    public long getAverageLatencyMillis() {
+        final long calls = mCallCount.get();
+        return (calls > 0) ? mTotalLatencyMillis.get() / calls : 0;
+    }
+
+    /**
+     * Number of new connections opened, calls above this number reused a pooled connection.
+     */
+    public long getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HttpMetrics[calls=%d, failed=%d, avgLatency=%dms, connections=%d, sent=%d, received=%d]",
+                getCallCount(), getFailedCount(), getAverageLatencyMillis(), getConnectionCount(),
+                getBytesSent(), getBytesReceived());
+    }
+
+    private class CallListener extends EventListener {
+
+        private long mStartNanos;
+
+        @Override
+        public void callStart(Call call) {
+            mStartNanos = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            mConnectionCount.incrementAndGet();
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            mBytesSent.addAndGet(request.headers().byteCount());
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            mBytesSent.addAndGet(byteCount);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            mBytesReceived.addAndGet(response.headers().byteCount());
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            mBytesReceived.addAndGet(byteCount);
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            record(call, false);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            record(call, true);
+        }
+
+        private void record(Call call, boolean failed) {
+            final long latencyMillis = (System.nanoTime() - mStartNanos) / 1000000L;
+            mCallCount.incrementAndGet();
+            mTotalLatencyMillis.addAndGet(latencyMillis);
+            if (failed) {
+                mFailedCount.incrementAndGet();
+            }
+            if (BuildConfig.DEBUG) {
+                Logger.v(TAG, "%s %s [latency=%dms, failed=%b]",
+                        call.request().method(), call.request().url().encodedPath(), latencyMillis, failed);
+            }
+        }
+    }
+
+}
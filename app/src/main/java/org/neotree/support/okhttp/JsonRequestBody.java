@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.okhttp;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * Request body that streams JSON straight into the request sink, without building the whole
+ * document as a String first. Combined with {@link GzipRequestInterceptor} the payload goes
+ * through the gzip sink as it is generated.
+ */
+public class JsonRequestBody extends RequestBody {
+
+    public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    public interface Writer {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+
+    public static JsonRequestBody create(ObjectMapper mapper, JsonNode node) {
+        return new JsonRequestBody(mapper.getFactory(), generator -> mapper.writeTree(generator, node));
+    }
+
+    public static JsonRequestBody create(JsonFactory factory, Writer writer) {
+        return new JsonRequestBody(factory, writer);
+    }
+
+    private final JsonFactory mFactory;
+    private final Writer mWriter;
+
+    private JsonRequestBody(JsonFactory factory, Writer writer) {
+        mFactory = factory;
+        mWriter = writer;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        // Not known in advance, the body is sent chunked
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        final JsonGenerator generator = mFactory.createGenerator(sink.outputStream(), JsonEncoding.UTF8);
+        // The sink belongs to OkHttp, flush the generator but leave the sink open
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            mWriter.writeTo(generator);
+        } finally {
+            generator.close();
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.okhttp;
+
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.neotree.model.realm.UploadItem;
+import org.neotree.support.datastore.RealmStore;
+import org.neotree.ui.activity.LoginActivity;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.Sort;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+/**
+ * Persistent outbound queue of completed sessions for the NeoTree API.
+ *
+ * Sessions are stored in Realm as {@link UploadItem}s and posted from a single worker thread, due
+ * items are loaded in batches and sent one request per session over the shared connection pool.
+ * Failed items are retried with exponential backoff; every item carries an idempotency key derived
+ * from its session id so the server can safely discard duplicates.
+ */
+public class SessionUploadQueue {
+
+    private static final String TAG = SessionUploadQueue.class.getSimpleName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BATCH_SIZE = 10;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    public static String idempotencyKey(String scriptId, String sessionId) {
+        return UUID.nameUUIDFromBytes(String.format("%s:%s", scriptId, sessionId).getBytes(UTF_8)).toString();
+    }
+
+    private final SessionUploader mUploader;
+    private final Random mRandom = new Random();
+    private final Scheduler mScheduler = Schedulers.from(Executors.newSingleThreadExecutor());
+
+    private Subscription mRetrySubscription;
+
+    public SessionUploadQueue(APIGatewayHelper api, String endpointUrl) {
+        mUploader = new SessionUploader(api, endpointUrl);
+    }
+
+    /**
+     * Stores the session in the queue and triggers an upload attempt.
+     */
+    public void enqueue(String sessionId, String scriptId, String uid, ObjectNode session) {
+        final UploadItem item = new UploadItem(idempotencyKey(scriptId, sessionId), sessionId, scriptId, uid,
+                session.toString());
+        schedule(() -> {
+            Realm realm = Realm.getDefaultInstance();
+            try {
+                RealmStore.storeUploadItem(realm, item);
+            } finally {
+                realm.close();
+            }
+            processQueue();
+        }, 0);
+    }
+
+    /**
+     * Triggers an upload attempt for all items that are due.
+     */
+    public void flush() {
+        schedule(this::processQueue, 0);
+    }
+
+    private void schedule(Action0 action, long delayMillis) {
+        final Scheduler.Worker worker = mScheduler.createWorker();
+        worker.schedule(() -> {
+            try {
+                action.call();
+            } finally {
+                worker.unsubscribe();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void scheduleRetry(long delayMillis) {
+        if (mRetrySubscription != null && !mRetrySubscription.isUnsubscribed()) {
+            mRetrySubscription.unsubscribe();
+        }
+        Log.d(TAG, String.format("Scheduling upload retry [delay=%dms]", delayMillis));
+        final Scheduler.Worker worker = mScheduler.createWorker();
+        worker.schedule(() -> {
+            try {
+                processQueue();
+            } finally {
+                worker.unsubscribe();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        mRetrySubscription = worker;
+    }
+
+    // Always runs on the queue worker thread
+    private void processQueue() {
+        Realm realm = Realm.getDefaultInstance();
+        try {
+            // Nothing else uploads, so items left in uploading state were interrupted by process death
+            updateItems(realm, realm.where(UploadItem.class).equalTo("status", UploadItem.STATUS_UPLOADING).findAll(),
+                    UploadItem.STATUS_PENDING, null, false);
+
+            while (true) {
+                final List<UploadItem> batch = loadDueBatch(realm);
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                boolean retryLater = false;
+                for (UploadItem item : batch) {
+                    final List<String> keys = Collections.singletonList(item.getIdempotencyKey());
+                    updateItems(realm, queryItems(realm, keys), UploadItem.STATUS_UPLOADING, null, false);
+
+                    int code;
+                    String error = null;
+                    try {
+                        code = mUploader.upload(item.getIdempotencyKey(), item.getUid(), item.getScriptId(),
+                                item.getPayload(), LoginActivity.auth0key);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Error uploading session", e);
+                        code = SessionUploader.NO_RESPONSE;
+                        error = e.getMessage();
+                    }
+
+                    switch (SessionUploader.classify(code)) {
+                        case DONE:
+                            Log.d(TAG, String.format("Uploaded session [sessionId=%s]", item.getSessionId()));
+                            updateItems(realm, queryItems(realm, keys), UploadItem.STATUS_DONE, null, false);
+                            break;
+                        case REJECTED:
+                            Log.e(TAG, String.format("Session rejected [code=%d, sessionId=%s]", code, item.getSessionId()));
+                            updateItems(realm, queryItems(realm, keys), UploadItem.STATUS_FAILED, "HTTP " + code, false);
+                            break;
+                        default:
+                            updateItems(realm, queryItems(realm, keys), UploadItem.STATUS_PENDING,
+                                    (error != null) ? error : "HTTP " + code, true);
+                            retryLater = true;
+                            break;
+                    }
+
+                    if (retryLater) {
+                        // Network or server trouble, leave the rest of the batch for the scheduled retry
+                        break;
+                    }
+                }
+                if (retryLater) {
+                    break;
+                }
+            }
+
+            // Wake up again when the next pending item is due
+            RealmResults<UploadItem> pending = realm.where(UploadItem.class)
+                    .equalTo("status", UploadItem.STATUS_PENDING)
+                    .sort("nextAttemptAt", Sort.ASCENDING)
+                    .findAll();
+            if (pending.size() > 0) {
+                scheduleRetry(Math.max(0, pending.first().getNextAttemptAt() - System.currentTimeMillis()));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing upload queue", e);
+        } finally {
+            realm.close();
+        }
+    }
+
+    private List<UploadItem> loadDueBatch(Realm realm) {
+        RealmResults<UploadItem> due = realm.where(UploadItem.class)
+                .equalTo("status", UploadItem.STATUS_PENDING)
+                .lessThanOrEqualTo("nextAttemptAt", System.currentTimeMillis())
+                .sort("createdAt", Sort.ASCENDING)
+                .findAll();
+
+        if (due.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return realm.copyFromRealm(due.subList(0, Math.min(BATCH_SIZE, due.size())));
+    }
+
+    private RealmResults<UploadItem> queryItems(Realm realm, List<String> keys) {
+        return realm.where(UploadItem.class)
+                .in("idempotencyKey", keys.toArray(new String[keys.size()]))
+                .findAll();
+    }
+
+    private void updateItems(Realm realm, RealmResults<UploadItem> items, String status, String error, boolean retry) {
+        if (items.isEmpty()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        realm.executeTransaction(r -> {
+            // Iterate over a snapshot, the status change removes items from the live results
+            for (UploadItem item : items.createSnapshot()) {
+                if (retry) {
+                    final int attempts = item.getAttempts() + 1;
+                    item.setAttempts(attempts);
+                    item.setNextAttemptAt(now + backoff(attempts));
+                    item.setStatus((attempts >= MAX_ATTEMPTS) ? UploadItem.STATUS_FAILED : status);
+                } else {
+                    item.setStatus(status);
+                }
+                item.setLastError(error);
+                item.setUpdatedAt(now);
+            }
+        });
+    }
+
+    private long backoff(int attempts) {
+        final long delay = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(attempts - 1, 20));
+        // Up to 20% jitter so that devices coming back online do not retry in lock step
+        return delay + (long) (delay * 0.2 * mRandom.nextDouble());
+    }
+
+}
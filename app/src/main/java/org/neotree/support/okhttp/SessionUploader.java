@@ -0,0 +1,74 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package org.neotree.support.okhttp;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import java.io.IOException;
+
+/**
+ * Posts one queued session to the API gateway, in the request shape the backend has always
+ * accepted: the session document as body and uid/scriptId as query parameters.
+ *
+ * Free of Android and Realm dependencies so it can be run against a mock HTTP server.
+ */
+public class SessionUploader {
+
+    public enum Result {
+        /** Accepted by the server */
+        DONE,
+        /** Network error or transient server error, the same request can be sent again */
+        RETRY,
+        /** Rejected by the server, sending it again will not help */
+        REJECTED
+    }
+
+    /** Status code used for requests that did not get a response */
+    public static final int NO_RESPONSE = -1;
+
+    private final APIGatewayHelper mApi;
+    private final String mEndpointUrl;
+    private final JsonFactory mJsonFactory = new JsonFactory();
+
+    public SessionUploader(APIGatewayHelper api, String endpointUrl) {
+        mApi = api;
+        mEndpointUrl = endpointUrl;
+    }
+
+    /**
+     * Posts the stored session payload and returns the HTTP status code.
+     */
+    public int upload(String idempotencyKey, String uid, String scriptId, String payload, String bearerToken) throws IOException {
+        final String url = mEndpointUrl + "?uid=\"" + uid + "\"&scriptId=\"" + scriptId + "\"";
+
+        // Stored payloads are already serialised, stream them as a raw value instead of re-parsing
+        final JsonRequestBody body = JsonRequestBody.create(mJsonFactory, generator -> generator.writeRawValue(payload));
+        return mApi.post(url, body, bearerToken, idempotencyKey);
+    }
+
+    public static Result classify(int code) {
+        if (code >= 200 && code < 300) {
+            return Result.DONE;
+        } else if (code >= 400 && code < 500 && code != 408 && code != 429) {
+            return Result.REJECTED;
+        }
+        return Result.RETRY;
+    }
+
+}
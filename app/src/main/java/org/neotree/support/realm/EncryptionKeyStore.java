@@ -83,6 +83,9 @@ public class EncryptionKeyStore {
     private final SecureRandom mSecureRandom = new SecureRandom();
     private final KeyStore mKeyStore = prepareKeyStore();
 
+    // Unwrapped key, kept for the lifetime of the process so the keystore is only used once
+    private byte[] mRealmKey;
+
     private EncryptionKeyStore() {
 
     }
@@ -91,27 +94,43 @@ public class EncryptionKeyStore {
         return (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
     }
 
-    public static byte[] generateOrGetRealmEncryptionKey(Context context) {
+    /**
+     * Returns a copy of the Realm key, unwrapping it through the keystore only on the first call.
+     * Safe to call from any thread so the unwrap can run in the background during startup.
+     */
+    public static synchronized byte[] generateOrGetRealmEncryptionKey(Context context) {
         ensureInstance();
 
+        if (sInstance.mRealmKey == null) {
+            sInstance.mRealmKey = sInstance.unwrapRealmKey(context);
+        }
+        return sInstance.mRealmKey.clone();
+    }
+
+    private byte[] unwrapRealmKey(Context context) {
         Context appContext = context.getApplicationContext();
-        byte[] encryptedRealmKey = sInstance.loadEncryptedRealmKey(appContext);
-        if (encryptedRealmKey == null || !sInstance.keystoreContainsEncryptionKey()) {
-            final byte[] realmKey = sInstance.generateKeyForRealm();
-            sInstance.generateKeyInKeystore(context);
-            encryptedRealmKey = sInstance.encryptAndSaveKeyForRealm(appContext, realmKey);
-            Arrays.fill(realmKey, (byte) 0);
+        byte[] encryptedRealmKey = loadEncryptedRealmKey(appContext);
+        if (encryptedRealmKey == null || !keystoreContainsEncryptionKey()) {
+            // A freshly generated key is used as is, there is no need to decrypt it again
+            final byte[] realmKey = generateKeyForRealm();
+            generateKeyInKeystore(context);
+            encryptAndSaveKeyForRealm(appContext, realmKey);
+            return realmKey;
         }
-        return sInstance.decryptKeyForRealm(encryptedRealmKey);
+        return decryptKeyForRealm(encryptedRealmKey);
     }
 
     @SuppressLint("CommitPrefEdits")
-    public static void reset(Context context) {
+    public static synchronized void reset(Context context) {
         ensureInstance();
+        if (sInstance.mRealmKey != null) {
+            Arrays.fill(sInstance.mRealmKey, (byte) 0);
+            sInstance.mRealmKey = null;
+        }
         sInstance.getPreference(context).edit().clear().commit();
     }
 
-    private static void ensureInstance() {
+    private static synchronized void ensureInstance() {
         if (sInstance == null) {
             sInstance = new EncryptionKeyStore();
         }
@@ -198,7 +217,7 @@ public class EncryptionKeyStore {
     }
 
     private byte[] encryptAndSaveKeyForRealm(Context context, byte[] keyForRealm) {
-        final KeyStore ks = prepareKeyStore();
+        final KeyStore ks = mKeyStore;
         final Cipher cipher = prepareCipher();
 
         final byte[] iv;
@@ -241,7 +260,7 @@ public class EncryptionKeyStore {
 
     private byte[] decryptKeyForRealm(byte[] ivAndEncryptedKey) {
         final Cipher cipher = prepareCipher();
-        final KeyStore ks = prepareKeyStore();
+        final KeyStore ks = mKeyStore;
 
         final ByteBuffer buffer = ByteBuffer.wrap(ivAndEncryptedKey);
         buffer.order(ORDER_FOR_ENCRYPTED_DATA);
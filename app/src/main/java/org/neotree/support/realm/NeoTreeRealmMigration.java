@@ -22,8 +22,10 @@ package org.neotree.support.realm;
 import android.util.Log;
 
 import org.neotree.model.realm.SessionEntry;
+import org.neotree.model.realm.UploadItem;
 
 import io.realm.DynamicRealm;
+import io.realm.FieldAttribute;
 import io.realm.RealmMigration;
 import io.realm.RealmSchema;
 
@@ -50,6 +52,23 @@ public class NeoTreeRealmMigration implements RealmMigration {
             migrateVersion++;
         }
 
+        // Migrate to version 3: Add the session upload queue.
+        if (migrateVersion == 2) {
+            schema.create(UploadItem.class.getSimpleName())
+                    .addField("idempotencyKey", String.class, FieldAttribute.PRIMARY_KEY)
+                    .addField("sessionId", String.class, FieldAttribute.INDEXED)
+                    .addField("scriptId", String.class)
+                    .addField("uid", String.class)
+                    .addField("payload", String.class)
+                    .addField("status", String.class, FieldAttribute.INDEXED)
+                    .addField("attempts", int.class)
+                    .addField("nextAttemptAt", long.class)
+                    .addField("lastError", String.class)
+                    .addField("createdAt", long.class)
+                    .addField("updatedAt", long.class);
+            migrateVersion++;
+        }
+
 //        // Migrate to version 2: Add a primary key + object references
 //        // Example:
 //        // public Person extends RealmObject {
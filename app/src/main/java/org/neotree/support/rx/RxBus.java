@@ -19,31 +19,81 @@
 
 package org.neotree.support.rx;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import rx.Observable;
+import rx.Scheduler;
+import rx.android.schedulers.AndroidSchedulers;
 import rx.subjects.PublishSubject;
 import rx.subjects.SerializedSubject;
 import rx.subjects.Subject;
 
 /**
- * Created by matteo on 01/06/2016.
+ * Event bus with one subject per event class, an event only reaches the subscribers of its exact
+ * class. Subscribers choose the delivery thread and what happens when they fall behind.
  */
 public class RxBus {
 
-    private final Subject<Object, Object> mEventBus = new SerializedSubject<>(PublishSubject.create());
+    public enum Backpressure {
+        /** Keep every event */
+        BUFFER,
+        /** Drop events while the subscriber is busy */
+        DROP,
+        /** Keep only the most recent event while the subscriber is busy (state updates) */
+        LATEST
+    }
+
+    private final ConcurrentMap<Class<?>, Subject<Object, Object>> mSubjects = new ConcurrentHashMap<>();
 
-    public void send(Object o) {
-        // Only dispatch if an observer is registered
-        if (mEventBus.hasObservers()) {
-            mEventBus.onNext(o);
+    public void send(Object event) {
+        // Only dispatch if an observer of this type is registered
+        final Subject<Object, Object> subject = mSubjects.get(event.getClass());
+        if (subject != null && subject.hasObservers()) {
+            subject.onNext(event);
         }
     }
 
-    public Observable<Object> observable() {
-        return mEventBus;
+    /**
+     * Events of the given class, delivered on the main thread.
+     */
+    public <T> Observable<T> observe(Class<T> eventClass) {
+        return observe(eventClass, AndroidSchedulers.mainThread(), Backpressure.BUFFER);
     }
 
-    public boolean hasObservers() {
-        return mEventBus.hasObservers();
+    public <T> Observable<T> observe(Class<T> eventClass, Backpressure backpressure) {
+        return observe(eventClass, AndroidSchedulers.mainThread(), backpressure);
+    }
+
+    public <T> Observable<T> observe(Class<T> eventClass, Scheduler scheduler, Backpressure backpressure) {
+        final Observable<T> events = subject(eventClass).cast(eventClass);
+        // observeOn() requests its whole buffer upstream, a drop or latest operator in front of it
+        // would only act once 128 events are queued. A buffer of one makes it follow the subscriber.
+        switch (backpressure) {
+            case DROP:
+                return events.onBackpressureDrop().observeOn(scheduler, 1);
+            case LATEST:
+                return events.onBackpressureLatest().observeOn(scheduler, 1);
+            default:
+                return events.onBackpressureBuffer().observeOn(scheduler);
+        }
+    }
+
+    public boolean hasObservers(Class<?> eventClass) {
+        final Subject<Object, Object> subject = mSubjects.get(eventClass);
+        return subject != null && subject.hasObservers();
+    }
+
+    private Subject<Object, Object> subject(Class<?> eventClass) {
+        Subject<Object, Object> subject = mSubjects.get(eventClass);
+        if (subject == null) {
+            final Subject<Object, Object> created = new SerializedSubject<>(PublishSubject.create());
+            subject = mSubjects.putIfAbsent(eventClass, created);
+            if (subject == null) {
+                subject = created;
+            }
+        }
+        return subject;
     }
 
 }
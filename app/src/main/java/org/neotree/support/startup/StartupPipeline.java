@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package org.neotree.support.startup;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Runs the application startup work, in parallel on background threads where it can be, and
+ * records how long each phase took.
+ *
+ * Anything that depends on the background phases (Realm, Firebase persistence, the caches) must
+ * call await() first, which returns immediately once startup has completed.
+ */
+public class StartupPipeline {
+
+    private static final String TAG = StartupPipeline.class.getSimpleName();
+
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private final long mStartMillis = SystemClock.uptimeMillis();
+    private final Map<String, Long> mPhases = new LinkedHashMap<>();
+    private final List<CountDownLatch> mPending = new ArrayList<>();
+
+    private volatile Throwable mError;
+    private volatile boolean mReady;
+
+    /**
+     * Runs the phase on the calling thread, failures are fatal.
+     */
+    public void run(String phase, Task task) {
+        final long start = SystemClock.uptimeMillis();
+        try {
+            task.run();
+        } catch (Exception e) {
+            throw new RuntimeException(String.format("Startup phase failed [phase=%s]", phase), e);
+        }
+        record(phase, start);
+    }
+
+    /**
+     * Runs the phase on a background thread, a failure is rethrown by await().
+     */
+    public void runAsync(String phase, Task task) {
+        runAsync(phase, task, true);
+    }
+
+    /**
+     * Runs the phase on a background thread, a failure is only logged as the app works without it.
+     */
+    public void runAsyncOptional(String phase, Task task) {
+        runAsync(phase, task, false);
+    }
+
+    private void runAsync(String phase, Task task, boolean required) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        synchronized (this) {
+            mPending.add(latch);
+        }
+
+        final Scheduler.Worker worker = Schedulers.io().createWorker();
+        worker.schedule(() -> {
+            final long start = SystemClock.uptimeMillis();
+            try {
+                task.run();
+                record(phase, start);
+            } catch (Exception e) {
+                Log.e(TAG, String.format("Startup phase failed [phase=%s]", phase), e);
+                if (required) {
+                    mError = new RuntimeException(String.format("Startup phase failed [phase=%s]", phase), e);
+                }
+            } finally {
+                latch.countDown();
+                worker.unsubscribe();
+            }
+        });
+    }
+
+    /**
+     * Blocks until all background phases have completed.
+     */
+    public void await() {
+        if (!mReady) {
+            final List<CountDownLatch> pending;
+            synchronized (this) {
+                pending = new ArrayList<>(mPending);
+            }
+
+            final long start = SystemClock.uptimeMillis();
+            try {
+                for (CountDownLatch latch : pending) {
+                    latch.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for startup", e);
+            }
+
+            synchronized (this) {
+                if (!mReady) {
+                    mReady = true;
+                    record("blocked", start);
+                    record("ready", mStartMillis);
+                    Log.i(TAG, String.format("Startup trace: %s", mPhases));
+                }
+            }
+        }
+
+        if (mError != null) {
+            throw new RuntimeException("Application startup failed", mError);
+        }
+    }
+
+    public boolean isReady() {
+        return mReady;
+    }
+
+    /**
+     * Duration of each completed phase in milliseconds, in order of completion.
+     */
+    public synchronized Map<String, Long> getTrace() {
+        return new LinkedHashMap<>(mPhases);
+    }
+
+    private synchronized void record(String phase, long startMillis) {
+        final long duration = SystemClock.uptimeMillis() - startMillis;
+        mPhases.put(phase, duration);
+        Log.d(TAG, String.format("Startup phase completed [phase=%s, duration=%dms]", phase, duration));
+    }
+
+}
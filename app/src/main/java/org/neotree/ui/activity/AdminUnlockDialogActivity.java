@@ -19,10 +19,13 @@
 
 package org.neotree.ui.activity;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import org.mindrot.jbcrypt.BCrypt;
@@ -30,14 +33,27 @@ import org.neotree.R;
 import org.neotree.inject.ActivityComponent;
 import org.neotree.inject.module.ActivityModule;
 import org.neotree.model.realm.AdminPassword;
+import org.neotree.support.AdminUnlockToken;
+import org.neotree.support.android.Logger;
 import org.neotree.support.datastore.RealmStore;
+import org.neotree.support.metrics.MetricsRegistry;
+import org.neotree.support.rx.RxHelper;
 import org.neotree.ui.core.EnhancedActivity;
 
+import java.util.concurrent.TimeUnit;
+
 import butterknife.BindView;
 import butterknife.OnClick;
+import rx.Observable;
+import rx.Subscription;
 
 public class AdminUnlockDialogActivity extends EnhancedActivity<ActivityComponent> {
 
+    private static final String TAG = AdminUnlockDialogActivity.class.getSimpleName();
+
+    // Budget for one password check on the slowest supported device, see checkPassword()
+    private static final long CHECK_BUDGET_MILLIS = 1000;
+
     @BindView(R.id.admin_unlock_password_field)
     EditText mPasswordField;
     @BindView(R.id.admin_unlock_error)
@@ -46,6 +62,10 @@ public class AdminUnlockDialogActivity extends EnhancedActivity<ActivityComponen
     Button mCancelButton;
     @BindView(R.id.admin_unlock_unlock_button)
     Button mUnlockButton;
+    @BindView(R.id.admin_unlock_progress)
+    ProgressBar mProgress;
+
+    private Subscription mVerification;
 
     @Override
     protected int getActivityViewId() {
@@ -66,16 +86,83 @@ public class AdminUnlockDialogActivity extends EnhancedActivity<ActivityComponen
     @OnClick(R.id.admin_unlock_unlock_button)
     void onUnlockButtonClick() {
         String password = mPasswordField.getText().toString();
-        if (!TextUtils.isEmpty(password)) {
-            AdminPassword stored = RealmStore.loadAdminPassword(getRealm());
-            if (BCrypt.checkpw(password, stored.getPassword())) {
-                setResult(RESULT_OK);
-                finish();
-            } else {
-                mErrorText.setVisibility(View.VISIBLE);
-            }
+        if (TextUtils.isEmpty(password) || mVerification != null) {
+            return;
+        }
+
+        AdminPassword stored = RealmStore.loadAdminPassword(getRealm());
+        if (stored == null) {
+            mErrorText.setVisibility(View.VISIBLE);
+            return;
         }
+
+        // Checking the hash takes a second or more on slow devices, keep it off the main thread
+        final String passwordHash = stored.getPassword();
+        setVerifying(true);
+        mVerification = Observable.defer(() -> Observable.just(checkPassword(password, passwordHash)))
+                .compose(RxHelper.applySchedulersCompute())
+                .subscribe(valid -> {
+                    mVerification = null;
+                    if (valid) {
+                        final long validity = TimeUnit.MINUTES.toMillis(
+                                getResources().getInteger(R.integer.admin_unlock_token_minutes));
+                        AdminUnlockToken.grant(passwordHash, validity);
+                        setResult(RESULT_OK);
+                        finish();
+                    } else {
+                        setVerifying(false);
+                        mErrorText.setVisibility(View.VISIBLE);
+                    }
+                }, throwable -> {
+                    mVerification = null;
+                    Log.e(logTag(), "Error verifying admin password", throwable);
+                    setVerifying(false);
+                    mErrorText.setVisibility(View.VISIBLE);
+                });
     }
 
-}
+    /**
+     * The BCrypt cost factor is part of the stored hash and is chosen where the admin password is
+     * set, not here. Every check is timed per cost factor into the metrics export, and checks over
+     * budget are logged, so the cost can be justified (or lowered) from measurements on the devices
+     * in use. The unlock token means a check runs at most once per token validity.
+     */
+    private static boolean checkPassword(String password, String passwordHash) {
+        final long start = MetricsRegistry.startTimer();
+        final boolean valid = BCrypt.checkpw(password, passwordHash);
+        final long elapsedMillis = (SystemClock.elapsedRealtimeNanos() - start) / 1000000;
+
+        final String cost = costFactor(passwordHash);
+        MetricsRegistry.get().stopTimer("admin.password_check.cost_" + cost, start);
+        if (elapsedMillis > CHECK_BUDGET_MILLIS) {
+            Log.w(TAG, String.format("Admin password check over budget, consider a lower cost factor [cost=%s, elapsed=%dms]",
+                    cost, elapsedMillis));
+        } else {
+            Logger.d(TAG, "Admin password check [cost=%s, elapsed=%dms]", cost, elapsedMillis);
+        }
+        return valid;
+    }
+
+    // Hashes look like $2a$10$<salt and hash>, the two digits after the version are the log2 cost
+    private static String costFactor(String passwordHash) {
+        return (passwordHash != null && passwordHash.length() > 7 && passwordHash.charAt(6) == '$')
+                ? passwordHash.substring(4, 6) : "unknown";
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mVerification != null) {
+            mVerification.unsubscribe();
+            mVerification = null;
+        }
+    }
 
+    private void setVerifying(boolean verifying) {
+        mProgress.setVisibility((verifying) ? View.VISIBLE : View.GONE);
+        mErrorText.setVisibility(View.GONE);
+        mPasswordField.setEnabled(!verifying);
+        mUnlockButton.setEnabled(!verifying);
+    }
+
+}
@@ -96,15 +96,6 @@ public class ConfigurationActivity extends EnhancedActivity<ActivityComponent> {
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    protected void onEventReceived(Object event) {
-//        if (event instanceof PreviousScreenEvent) {
-//            Toast.makeText(this, "Show previous screen", Toast.LENGTH_SHORT).show();
-//        } else if (event instanceof NextScreenEvent) {
-//            showNextScreen();
-//        }
-    }
-
     private static class ConfigurationListViewAdapter extends FirebaseRecyclerAdapter<ConfigItemViewHolder, ConfigKey> {
 
         private SharedPreferences mConfigPrefs;
@@ -206,10 +206,8 @@ public class MainActivity extends EnhancedActivity<ActivityComponent>
     }
 
     @Override
-    protected void onEventReceived(Object event) {
-        if (event instanceof PlayScriptEvent) {
-            showScriptPlayerActivity(((PlayScriptEvent) event).script);
-        }
+    protected void onSubscribeEvents() {
+        subscribeEvent(PlayScriptEvent.class, event -> showScriptPlayerActivity(event.script));
     }
 
     @Override
@@ -25,11 +25,13 @@ import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AlertDialog;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -43,11 +45,17 @@ import org.neotree.inject.module.ActivityModule;
 import org.neotree.model.firebase.Diagnosis;
 import org.neotree.model.firebase.Screen;
 import org.neotree.model.firebase.Script;
+import org.neotree.player.ScreenPrefetcher;
 import org.neotree.player.ScriptPlayer;
 import org.neotree.player.type.ScreenType;
 import org.neotree.support.android.AndroidHelper;
+import org.neotree.support.android.ImageLoader;
+import org.neotree.support.android.Logger;
 import org.neotree.support.datastore.FirebaseStore;
-import org.neotree.support.datastore.RealmStore;
+import org.neotree.support.metrics.JankMonitor;
+import org.neotree.support.metrics.MetricsRegistry;
+import org.neotree.support.rx.RxBus;
+import org.neotree.support.rx.RxFirebase;
 import org.neotree.support.rx.RxHelper;
 import org.neotree.ui.core.EnhancedActivity;
 import org.neotree.ui.fragment.ChecklistScreenFragment;
@@ -61,14 +69,18 @@ import org.neotree.ui.fragment.TimerScreenFragment;
 import org.neotree.ui.fragment.YesNoScreenFragment;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import butterknife.BindView;
 import butterknife.OnClick;
-import rx.Observable;
+import rx.android.schedulers.AndroidSchedulers;
 
 public class ScriptPlayerActivity extends EnhancedActivity<ActivityComponent>
         implements ScriptPlayer.ScriptPlayerListener {
 
+    private static final int PREFETCH_SCREEN_COUNT = 2;
+    private static final long PREFETCH_DEBOUNCE_MILLIS = 500;
+
     @BindView(R.id.script_player_toolbar)
     Toolbar mToolbar;
     @BindView(R.id.script_player_action_text)
@@ -80,6 +92,8 @@ public class ScriptPlayerActivity extends EnhancedActivity<ActivityComponent>
 
     // TODO: Save/Restore ScriptPlayer context
     private ScriptPlayer mScriptPlayer;
+    private ScreenPrefetcher mScreenPrefetcher;
+    private final RecyclerView.RecycledViewPool mFieldViewPool = new RecyclerView.RecycledViewPool();
     private Script mScript;
     private List<Diagnosis> mDiagnosisList;
     private boolean mIsSummaryScreen;
@@ -111,16 +125,53 @@ public class ScriptPlayerActivity extends EnhancedActivity<ActivityComponent>
             throw new IllegalStateException("Script was null");
         }
 
-        Log.d(logTag(), String.format("Starting script \"%s\"", mScript.title));
+        Logger.d(logTag(), "Starting script \"%s\"", mScript.title);
         setTitle(mScript.title);
 
+        mScreenPrefetcher = new ScreenPrefetcher(ImageLoader.targetWidth(this));
+
         addSubscription(FirebaseStore.get().loadScreens(mScript.scriptId)
                 .compose(RxHelper.applySchedulers())
                 .subscribe((screens -> {
                     mScriptPlayer = new ScriptPlayer(this, getRealm(), this);
                     mScriptPlayer.setPlayerData(mScript, screens);
+
+                    // Entered values decide which screens come next, predict again once input settles
+                    addSubscription(mScriptPlayer.valueChangeObservable()
+                            .debounce(PREFETCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)
+                            .observeOn(AndroidSchedulers.mainThread())
+                            .subscribe(value -> prefetchNextScreens())
+                    );
                 }))
         );
+
+        if (isLiveReloadEnabled()) {
+            addSubscription(FirebaseStore.get().observeScreenChanges(mScript.scriptId)
+                    .filter(RxFirebase.FirebaseChildEvent::isTypeChange)
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(event -> {
+                        if (mScriptPlayer != null) {
+                            Logger.d(logTag(), "Screen has changed, updating [key=%s]", event.key);
+                            mScriptPlayer.updateScreen(event.value);
+                        }
+                    })
+            );
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (mScriptPlayer != null) {
+            mScriptPlayer.flushPendingValues();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mScreenPrefetcher.cancel();
+        JankMonitor.get().setScreen(null, null, null, null);
     }
 
     @Override
@@ -185,35 +236,39 @@ public class ScriptPlayerActivity extends EnhancedActivity<ActivityComponent>
 
     @Override
     public void onCurrentScreenUpdated(Screen screen) {
-        Log.d(logTag(), String.format("onCurrentScreenUpdated() - [%s]", screen.screenId));
+        Logger.d(logTag(), "onCurrentScreenUpdated() - [%s]", screen.screenId);
         showScreen(screen);
     }
 
     @Override
-    protected void onEventReceived(Object event) {
-        if (event instanceof NextActionEnableEvent) {
+    protected void onSubscribeEvents() {
+        // Fields toggle the next button on every change, only the latest state matters
+        subscribeEvent(NextActionEnableEvent.class, RxBus.Backpressure.LATEST, event -> {
             if (mNextButton != null) {
-                if (((NextActionEnableEvent) event).enabled) {
+                if (event.enabled) {
                     mNextButton.show();
                 } else {
                     mNextButton.hide();
                 }
             }
-        } else if (event instanceof PrintSessionSummaryEvent) {
-            PrintSessionSummaryEvent e = (PrintSessionSummaryEvent) event;
-            addSubscription(FirebaseStore.get().loadDiagnosis(getScript().scriptId)
-                    .compose(RxHelper.applySchedulers())
-                    .flatMap(diagnosisList -> {
-                        mDiagnosisList = diagnosisList;
-                        return Observable.just(RealmStore.loadEntriesForSession(getRealm(), e.sessionId, e.confidential));
-                    })
-                    .subscribe(result -> {
-                        SummaryExportManager.print(this, getRealm(), e.sessionId, result, mDiagnosisList);
-                    }, throwable -> {
-                        Log.e(logTag(), "Error!", throwable);
-                    })
-            );
-        }
+            MetricsRegistry.get().stopTimer("player.next_enable_delivery", event.sentAt);
+        });
+        subscribeEvent(PrintSessionSummaryEvent.class, this::printSessionSummary);
+    }
+
+    private void printSessionSummary(PrintSessionSummaryEvent e) {
+        addSubscription(FirebaseStore.get().loadDiagnosis(getScript().scriptId)
+                .compose(RxHelper.applySchedulers())
+                .flatMap(diagnosisList -> {
+                    mDiagnosisList = diagnosisList;
+                    return SummaryExportManager.print(this, e.sessionId, e.confidential, diagnosisList);
+                })
+                .subscribe(session -> {
+                    Logger.d(logTag(), "Printing session summary [sessionId=%s]", session.getSessionId());
+                }, throwable -> {
+                    Log.e(logTag(), "Error!", throwable);
+                })
+        );
     }
 
     private void showCancelScriptWarning() {
@@ -246,7 +301,9 @@ public class ScriptPlayerActivity extends EnhancedActivity<ActivityComponent>
     }
 
     private void showScreen(Screen screen) {
-        Log.d(logTag(), String.format("Showing screen [type=%s]", screen.type));
+        Logger.d(logTag(), "Showing screen [type=%s]", screen.type);
+
+        final long transitionStart = MetricsRegistry.startTimer();
 
         // Hide next button by default to prevent fast skipping
         mNextButton.hide();
@@ -255,6 +312,7 @@ public class ScriptPlayerActivity extends EnhancedActivity<ActivityComponent>
         setTitle(screen.title);
         setActionText(screen.actionText);
         setStepText(screen.step);
+        JankMonitor.get().setScreen(mScript.scriptId, screen.screenId, screen.type, screen.title);
 
         // Show screen fragment
         Fragment screenFragment = null;
@@ -288,15 +346,45 @@ public class ScriptPlayerActivity extends EnhancedActivity<ActivityComponent>
 
         if (screenFragment != null) {
             AndroidHelper.replaceFragment(getFragmentManager(), R.id.script_player_content_frame, screenFragment, false);
+            recordScreenTransition(transitionStart);
         } else {
             Toast.makeText(this, "Unsupported screen type", Toast.LENGTH_LONG).show();
         }
+
+        prefetchNextScreens();
+    }
+
+    /**
+     * Records the time from the screen change request to the first draw of the new screen.
+     */
+    private void recordScreenTransition(long start) {
+        final View contentFrame = findViewById(R.id.script_player_content_frame);
+        if (contentFrame == null) {
+            return;
+        }
+        contentFrame.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                contentFrame.getViewTreeObserver().removeOnPreDrawListener(this);
+                MetricsRegistry.get().stopTimer("player.screen_transition", start);
+                return true;
+            }
+        });
+    }
+
+    private void prefetchNextScreens() {
+        if (mScriptPlayer != null && !mIsSummaryScreen) {
+            mScreenPrefetcher.prefetch(mScriptPlayer.upcomingScreens(), mScriptPlayer.snapshotValues(),
+                    PREFETCH_SCREEN_COUNT);
+        }
     }
 
     private void showSummaryScreen() {
         mScriptPlayer.finishSession();
 
         mIsSummaryScreen = true;
+        JankMonitor.get().logReport(mScript.scriptId);
+        JankMonitor.get().setScreen(mScript.scriptId, "summary", "summary", getString(R.string.title_activity_summary));
 
         setTitle(R.string.title_activity_summary);
         setActionText(null);
@@ -336,6 +424,13 @@ public class ScriptPlayerActivity extends EnhancedActivity<ActivityComponent>
         }
     }
 
+    /**
+     * Field views shared by all the form screens of this script, so they are inflated only once.
+     */
+    public RecyclerView.RecycledViewPool getFieldViewPool() {
+        return mFieldViewPool;
+    }
+
     public ScriptPlayer getScriptPlayer() {
         return mScriptPlayer;
     }
@@ -35,8 +35,8 @@ import org.neotree.export.SummaryExportManager;
 import org.neotree.inject.ActivityComponent;
 import org.neotree.inject.module.ActivityModule;
 import org.neotree.model.firebase.Diagnosis;
-import org.neotree.model.realm.Session;
 import org.neotree.support.android.AndroidHelper;
+import org.neotree.support.android.Logger;
 import org.neotree.support.datastore.FirebaseStore;
 import org.neotree.support.datastore.RealmStore;
 import org.neotree.support.rx.RxHelper;
@@ -48,7 +48,6 @@ import org.neotree.ui.fragment.SummaryFragment;
 import java.util.List;
 
 import butterknife.BindView;
-import rx.Observable;
 
 public class SessionHistoryActivity extends EnhancedActivity<ActivityComponent> {
 
@@ -104,26 +103,25 @@ public class SessionHistoryActivity extends EnhancedActivity<ActivityComponent>
     }
 
     @Override
-    protected void onEventReceived(Object event) {
-        if (event instanceof ShowSessionDetailEvent) {
-            ShowSessionDetailEvent e = (ShowSessionDetailEvent) event;
-            showSessionSummaryDetail(e.sessionId);
-        } else if (event instanceof PrintSessionSummaryEvent) {
-            PrintSessionSummaryEvent e = (PrintSessionSummaryEvent) event;
-            Session session = RealmStore.loadSession(getRealm(), e.sessionId);
-            addSubscription(FirebaseStore.get().loadDiagnosis(session.getScriptId())
-                    .compose(RxHelper.applySchedulers())
-                    .flatMap(diagnosisList -> {
-                        mDiagnosisList = diagnosisList;
-                        return Observable.just(RealmStore.loadEntriesForSession(getRealm(), e.sessionId, e.confidential));
-                    })
-                    .subscribe(result -> {
-                        SummaryExportManager.print(this, getRealm(), e.sessionId, result, mDiagnosisList);
-                    }, throwable -> {
-                        Log.e(logTag(), "Error!", throwable);
-                    })
-            );
-        }
+    protected void onSubscribeEvents() {
+        subscribeEvent(ShowSessionDetailEvent.class, event -> showSessionSummaryDetail(event.sessionId));
+        subscribeEvent(PrintSessionSummaryEvent.class, this::printSessionSummary);
+    }
+
+    private void printSessionSummary(PrintSessionSummaryEvent e) {
+        addSubscription(RealmStore.loadSessionAsync(e.sessionId)
+                .flatMap(session -> FirebaseStore.get().loadDiagnosis(session.getScriptId())
+                        .compose(RxHelper.applySchedulers()))
+                .flatMap(diagnosisList -> {
+                    mDiagnosisList = diagnosisList;
+                    return SummaryExportManager.print(this, e.sessionId, e.confidential, diagnosisList);
+                })
+                .subscribe(session -> {
+                    Logger.d(logTag(), "Printing session summary [sessionId=%s]", session.getSessionId());
+                }, throwable -> {
+                    Log.e(logTag(), "Error!", throwable);
+                })
+        );
     }
 
     private void showDeleteConfirmation(Context context) {
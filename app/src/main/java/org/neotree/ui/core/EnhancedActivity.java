@@ -32,7 +32,6 @@ import org.neotree.R;
 import org.neotree.inject.ApplicationComponent;
 import org.neotree.support.realm.EncryptionKeyStore;
 import org.neotree.support.rx.RxBus;
-import org.neotree.support.rx.RxHelper;
 
 import java.lang.reflect.Method;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -42,7 +41,11 @@ import javax.inject.Inject;
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.exceptions.RealmFileException;
+import io.realm.exceptions.RealmMigrationNeededException;
 import rx.Subscription;
+import rx.functions.Action1;
 import rx.subscriptions.CompositeSubscription;
 
 /**
@@ -73,8 +76,6 @@ public abstract class EnhancedActivity<C> extends AppCompatActivity {
     protected final void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        initializeRealm();
-
         // Set activity content view
         int viewId = getActivityViewId();
         if (viewId != 0) {
@@ -94,9 +95,17 @@ public abstract class EnhancedActivity<C> extends AppCompatActivity {
             Log.v(logTag(), "Setting activity content view");
             setContentView(viewId);
 
+            // Opened after inflation so the layout overlaps with the background Realm setup
+            final boolean realmReady = initializeRealm();
+
             Log.v(logTag(), "Binding activity content view");
             ButterKnife.bind(this);
 
+            if (!realmReady) {
+                // The activity finishes from the Realm error dialog
+                return;
+            }
+
             Log.v(logTag(), "Triggering onCreateAfterSetContentView()");
             onCreateAfterSetContentView(savedInstanceState);
 
@@ -129,11 +138,8 @@ public abstract class EnhancedActivity<C> extends AppCompatActivity {
         Log.v(logTag(), "onResume()");
         super.onResume();
 
-        Log.v(logTag(), "Subscribing presenter to the event bus");
-        addSubscription(getEventBus().observable()
-                .compose(RxHelper.applySchedulers())
-                .subscribe(this::onEventReceived)
-        );
+        Log.v(logTag(), "Subscribing to the event bus");
+        onSubscribeEvents();
     }
 
     @Override
@@ -170,10 +176,21 @@ public abstract class EnhancedActivity<C> extends AppCompatActivity {
         mSubscription.remove(subscription);
     }
 
-    protected void onEventReceived(Object event) {
+    /**
+     * Registers the event bus handlers with subscribeEvent(), subscriptions end with the others.
+     */
+    protected void onSubscribeEvents() {
         // Do nothing by default
     }
 
+    protected <T> void subscribeEvent(Class<T> eventClass, Action1<T> handler) {
+        addSubscription(getEventBus().observe(eventClass).subscribe(handler));
+    }
+
+    protected <T> void subscribeEvent(Class<T> eventClass, RxBus.Backpressure backpressure, Action1<T> handler) {
+        addSubscription(getEventBus().observe(eventClass, backpressure).subscribe(handler));
+    }
+
     protected void applyMenuItemTint(Menu menu) {
 //        // FIXME: Find a way to fix this properly...
 //        int iconColor = ResourcesCompat.getColor(getResources(), R.color.colorMainToolbarForeground, getTheme());
@@ -192,20 +209,34 @@ public abstract class EnhancedActivity<C> extends AppCompatActivity {
         return ((NeoTree) getApplication()).getComponent();
     }
 
-    public void initializeRealm() {
+    /**
+     * Opens the activity Realm, returns false if the Realm file cannot be opened.
+     */
+    public boolean initializeRealm() {
+        // Other startup failures are not recoverable from here and are rethrown
+        ((NeoTree) getApplication()).awaitStartup();
+
         Log.d(logTag(), "Creating realm instance");
         try {
             mRealm = Realm.getDefaultInstance();
-        } catch (Exception e) {
+            return true;
+        } catch (RealmFileException | RealmMigrationNeededException e) {
+            Log.e(logTag(), "Error opening realm", e);
             final AlertDialog.Builder builder = new AlertDialog.Builder(this)
                     .setTitle(R.string.label_realm_error_title)
                     .setMessage(R.string.label_realm_error_message)
+                    .setCancelable(false)
+                    .setNegativeButton(R.string.label_action_cancel, (d, which) -> finish())
                     .setPositiveButton(R.string.label_realm_error_action, (d, which) -> {
                       //  EncryptionKeyStore.reset(EnhancedActivity.this);
-                        Realm.deleteRealm(((NeoTree) getApplication()).getRealmConfiguration());
+                        final RealmConfiguration configuration = ((NeoTree) getApplication()).getRealmConfiguration();
+                        if (configuration != null) {
+                            Realm.deleteRealm(configuration);
+                        }
                         finish();
                     });
             builder.create().show();
+            return false;
         }
     }
 
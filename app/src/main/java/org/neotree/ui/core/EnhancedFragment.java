@@ -34,7 +34,6 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import org.neotree.support.rx.RxBus;
-import org.neotree.support.rx.RxHelper;
 
 import java.lang.reflect.Method;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -43,6 +42,7 @@ import butterknife.ButterKnife;
 import butterknife.Unbinder;
 import io.realm.Realm;
 import rx.Subscription;
+import rx.functions.Action1;
 import rx.subscriptions.CompositeSubscription;
 
 /**
@@ -78,10 +78,7 @@ public abstract class EnhancedFragment extends Fragment {
             mUnbinder = ButterKnife.bind(this, view);
 
             Log.v(logTag(), "Subscribing to the event bus");
-            addSubscription(getEventBus().observable()
-                    .compose(RxHelper.applySchedulers())
-                    .subscribe(this::onEventReceived)
-            );
+            onSubscribeEvents();
 
             Log.v(logTag(), "Calling onFragmentViewCreated()");
             onFragmentViewCreated(view, savedInstanceState);
@@ -161,10 +158,21 @@ public abstract class EnhancedFragment extends Fragment {
         mSubscription.remove(subscription);
     }
 
-    protected void onEventReceived(Object event) {
+    /**
+     * Registers the event bus handlers with subscribeEvent(), subscriptions end with the others.
+     */
+    protected void onSubscribeEvents() {
         // Do nothing by default
     }
 
+    protected <T> void subscribeEvent(Class<T> eventClass, Action1<T> handler) {
+        addSubscription(getEventBus().observe(eventClass).subscribe(handler));
+    }
+
+    protected <T> void subscribeEvent(Class<T> eventClass, RxBus.Backpressure backpressure, Action1<T> handler) {
+        addSubscription(getEventBus().observe(eventClass, backpressure).subscribe(handler));
+    }
+
     protected EnhancedActivity<?> getEnhancedActivity() {
         return (EnhancedActivity<?>) getActivity();
     }
@@ -21,9 +21,9 @@ package org.neotree.ui.fragment;
 
 import android.os.Bundle;
 import android.support.v7.app.AlertDialog;
+import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.util.DisplayMetrics;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -39,7 +39,7 @@ import org.neotree.model.firebase.Metadata;
 import org.neotree.model.firebase.Screen;
 import org.neotree.model.firebase.Script;
 import org.neotree.player.ScriptPlayer;
-import org.neotree.support.datastore.FirebaseStore;
+import org.neotree.support.metrics.MetricsRegistry;
 import org.neotree.ui.activity.ScriptPlayerActivity;
 import org.neotree.ui.core.EnhancedFragment;
 
@@ -67,22 +67,6 @@ public abstract class AbstractScreenFragment extends EnhancedFragment {
         }
     }
 
-    @Override
-    public void onResume() {
-        super.onResume();
-        if (isLiveReloadEnabled()) {
-            addSubscription(FirebaseStore.get().observeScreens(getScript().scriptId).subscribe(event -> {
-                if (event.isTypeChange()) {
-                    Log.d(logTag(), String.format("Screen child has changed [key=%s]", event.key));
-                    if (getScreenId().equals(event.key)) {
-                        Log.d(logTag(), "Screen has changed, updating...");
-                        getScriptPlayer().updateScreen(event.value);
-                    }
-                }
-            }));
-        }
-    }
-
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         super.onCreateOptionsMenu(menu, inflater);
@@ -110,6 +94,10 @@ public abstract class AbstractScreenFragment extends EnhancedFragment {
         return ((ScriptPlayerActivity) getActivity()).getScriptPlayer();
     }
 
+    protected RecyclerView.RecycledViewPool getFieldViewPool() {
+        return ((ScriptPlayerActivity) getActivity()).getFieldViewPool();
+    }
+
     protected Script getScript() {
         return ((ScriptPlayerActivity) getActivity()).getScript();
     }
@@ -127,7 +115,8 @@ public abstract class AbstractScreenFragment extends EnhancedFragment {
     }
 
     protected void setActionNextEnabled(boolean enabled) {
-        getEventBus().send(new NextActionEnableEvent(enabled));
+        // Together with form.value_change gives the latency from a committed value to the next button
+        getEventBus().send(new NextActionEnableEvent(enabled, MetricsRegistry.startTimer()));
     }
 
     private void showInfoTextDialog() {
@@ -32,6 +32,7 @@ import android.view.View;
 import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.RadioButton;
+import android.widget.TextView;
 
 import com.crashlytics.android.Crashlytics;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -41,33 +42,36 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.neotree.R;
-import org.neotree.model.firebase.Field;
-import org.neotree.model.firebase.Item;
-import org.neotree.model.firebase.Metadata;
+import org.neotree.export.ColumnarExportWriter;
+import org.neotree.export.ScriptExportSchema;
 import org.neotree.model.firebase.Screen;
 import org.neotree.model.firebase.Script;
 import org.neotree.model.realm.SessionEntry;
 import org.neotree.model.realm.SessionValue;
+import org.neotree.model.realm.UploadItem;
 import org.neotree.player.type.DataType;
-import org.neotree.player.type.ScreenType;
 import org.neotree.support.datastore.FirebaseStore;
 import org.neotree.support.datastore.RealmStore;
-import org.neotree.support.okhttp.APIGatewayHelper;
+import org.neotree.support.okhttp.SessionUploadQueue;
 import org.neotree.support.rx.RxHelper;
 import org.neotree.support.rx.data.Pair;
 import org.neotree.ui.core.EnhancedFragment;
-import org.neotree.ui.activity.LoginActivity;
+import org.neotree.support.android.Logger;
+import org.neotree.support.metrics.JankMonitor;
+import org.neotree.support.metrics.MetricsRegistry;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.inject.Inject;
+
 import butterknife.BindView;
 import butterknife.OnClick;
+import io.realm.RealmResults;
 import jxl.Workbook;
 import jxl.WorkbookSettings;
 import jxl.write.Label;
@@ -87,7 +91,7 @@ public class DataExportFragment extends EnhancedFragment {
     private static final int REQUEST_WRITE_STORAGE = 1000;
 
     private enum ExportFormat {
-        EXCEL, JSON, JSONAPI
+        EXCEL, JSON, JSONAPI, COLUMNAR
     }
 
     public static DataExportFragment newInstance() {
@@ -100,13 +104,21 @@ public class DataExportFragment extends EnhancedFragment {
     RadioButton mJsonRadioButton;
     @BindView(R.id.export_radio_format_jsonapi)
     RadioButton mJsonapiRadioButton;
+    @BindView(R.id.export_radio_format_columnar)
+    RadioButton mColumnarRadioButton;
     @BindView(R.id.export_export_action)
     Button mExportButton;
     @BindView(R.id.export_wip_overlay)
     LinearLayout mExportingOverlay;
+    @BindView(R.id.export_upload_status)
+    TextView mUploadStatusText;
+
+    @Inject
+    SessionUploadQueue mUploadQueue;
 
     private ExportFormat mExportFormat = ExportFormat.EXCEL;
     private AtomicInteger mRunningExportCount = new AtomicInteger(0);
+    private RealmResults<UploadItem> mUploadItems;
 
     @Override
     protected int getFragmentViewId() {
@@ -122,6 +134,16 @@ public class DataExportFragment extends EnhancedFragment {
     @Override
     public void onFragmentViewCreated(View view, Bundle savedInstanceState) {
         super.onFragmentViewCreated(view, savedInstanceState);
+        mUploadItems = RealmStore.loadUploadItems(getRealm(), this::updateUploadStatus);
+    }
+
+    @Override
+    public void onDestroyView() {
+        if (mUploadItems != null) {
+            mUploadItems.removeAllChangeListeners();
+            mUploadItems = null;
+        }
+        super.onDestroyView();
     }
 
     @Override
@@ -153,7 +175,8 @@ public class DataExportFragment extends EnhancedFragment {
         }
     }
 
-    @OnClick({R.id.export_radio_format_excel, R.id.export_radio_format_json, R.id.export_radio_format_jsonapi})
+    @OnClick({R.id.export_radio_format_excel, R.id.export_radio_format_json, R.id.export_radio_format_jsonapi,
+            R.id.export_radio_format_columnar})
     void onOutputFormatClick(View v) {
         if (v == mExcelRadioButton) {
             mExportFormat = ExportFormat.EXCEL;
@@ -161,6 +184,8 @@ public class DataExportFragment extends EnhancedFragment {
             mExportFormat = ExportFormat.JSON;
         } else if (v == mJsonapiRadioButton) {
             mExportFormat = ExportFormat.JSONAPI;
+        } else if (v == mColumnarRadioButton) {
+            mExportFormat = ExportFormat.COLUMNAR;
         }
     }
 
@@ -180,7 +205,7 @@ public class DataExportFragment extends EnhancedFragment {
                     showExportInProgress(true);
                 })
                 .map(exportData -> {
-                    Log.d(TAG, String.format("Exporting data for script: %s", exportData.getScript().title));
+                    Logger.d(TAG, "Exporting data for script: %s", exportData.getScript().title);
                     return export(exportData);
                 })
                 .subscribe(result -> {
@@ -214,93 +239,44 @@ public class DataExportFragment extends EnhancedFragment {
     }
 
     private Observable<ExportData> fetchScriptSessionData(Pair<Script, List<Screen>> metadata) {
-        return Observable.just(RealmStore.loadEntriesForScript(getRealm(), metadata.getValue1().scriptId, true))
+        final long start = MetricsRegistry.startTimer();
+        return RealmStore.loadEntriesForScriptAsync(metadata.getValue1().scriptId, true)
+                .doOnNext(entries -> MetricsRegistry.get().stopTimer("export.load_entries", start))
                 .map((data -> new ExportData(metadata.getValue1(), metadata.getValue2(), data)));
     }
 
     private boolean export(ExportData exportData) {
+        final long start = MetricsRegistry.startTimer();
+        final boolean result;
         switch (mExportFormat) {
             case EXCEL:
-                return exportAsExcelSpreadsheet(exportData);
+                result = exportAsExcelSpreadsheet(exportData);
+                break;
             case JSON:
-                return exportAsJson(exportData, false);
+                result = exportAsJson(exportData, false);
+                break;
             case JSONAPI:
-                return exportAsJson(exportData, true);
+                result = exportAsJson(exportData, true);
+                break;
+            case COLUMNAR:
+                result = exportAsColumnar(exportData);
+                break;
             default:
-                return false;
+                result = false;
+                break;
         }
+        MetricsRegistry.get().stopTimer("export." + mExportFormat.name().toLowerCase(Locale.ENGLISH), start);
+        return result;
     }
 
     private boolean exportAsExcelSpreadsheet(ExportData exportData) {
         if (exportData.getEntries() == null || exportData.getEntries().size() == 0) {
-            Log.d(TAG, "Nothing to export for script");
+            Logger.d(TAG, "Nothing to export for script");
             return false;
         }
 
-        final ArrayList<String> headers = new ArrayList<>();
-        final HashMap<String, Integer> columnMap = new HashMap<>();
-        final List<Screen> screens = exportData.getScreens();
-
-        int columnIndex = 0;
-
-        for (int screenIndex = 0; screens != null && screenIndex < screens.size(); screenIndex++) {
-            final Screen screen = screens.get(screenIndex);
-            final ScreenType screenType = ScreenType.fromString(screen.type);
-            final Metadata metadata = screen.metadata;
-
-            // Map screen keys
-            String screenKey = (TextUtils.isEmpty(metadata.key)) ? null : metadata.key.trim();
-            if (screenKey != null && !metadata.confidential) {
-                if (screenType == ScreenType.MULTI_SELECT) {
-                    String itemKey;
-                    for (int itemIndex = 0; itemIndex < metadata.items.size(); itemIndex++) {
-                        final Item item = metadata.items.get(itemIndex);
-                        itemKey = String.format("%s_%s", screenKey, item.id);
-                        Log.d(TAG, String.format("Mapping item key (multiple selection) [key=%s, index=%d]", itemKey, columnIndex));
-                        columnMap.put(itemKey, columnIndex++);
-                        headers.add(itemKey);
-                    }
-                } else {
-                    Log.d(TAG, String.format("Mapping screen key [key=%s, index=%d]", screenKey, columnIndex));
-                    columnMap.put(screenKey, columnIndex++);
-                    headers.add(screenKey);
-                }
-            } else {
-                if (screenType == ScreenType.FORM) {
-                    // Map field keys
-                    String fieldKey = null;
-                    if (metadata.fields != null && metadata.fields.size() > 0) {
-                        for (int fieldIndex = 0; fieldIndex < metadata.fields.size(); fieldIndex++) {
-                            final Field field = metadata.fields.get(fieldIndex);
-                            fieldKey = (TextUtils.isEmpty(field.key)) ? null : field.key.trim();
-
-                            if (fieldKey != null && !field.confidential) {
-                                Log.d(TAG, String.format("Mapping field key [key=%s, index=%d]", fieldKey, columnIndex));
-                                columnMap.put(fieldKey, columnIndex++);
-                                headers.add(fieldKey);
-                            }
-                        }
-                    }
-                } else {
-                    // Map item keys
-                    if (metadata.items != null) {
-                        if (screenType == ScreenType.CHECKLIST) {
-                            String itemKey;
-                            for (int itemIndex = 0; itemIndex < metadata.items.size(); itemIndex++) {
-                                final Item item = metadata.items.get(itemIndex);
-                                itemKey = (TextUtils.isEmpty(item.key)) ? null : item.key.trim();
-
-                                if (itemKey != null && !item.confidential) {
-                                    Log.d(TAG, String.format("Mapping item key (checklist) [key=%s, index=%d]", itemKey, columnIndex));
-                                    columnMap.put(itemKey, columnIndex++);
-                                    headers.add(itemKey);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        final ScriptExportSchema schema = exportData.getSchema();
+        final List<String> headers = schema.getHeaders();
 
         WritableWorkbook workbook = null;
         try {
@@ -325,8 +301,8 @@ public class DataExportFragment extends EnhancedFragment {
             );
             File exportFile = new File(exportRootDir, filename);
 
-            Log.d(TAG, "Filename :" + filename);
-            Log.d(TAG, "File path:" + exportFile.getAbsolutePath());
+            Logger.d(TAG, "Filename :%s", filename);
+            Logger.d(TAG, "File path:%s", exportFile);
             WorkbookSettings wbSettings = new WorkbookSettings();
             wbSettings.setLocale(Locale.ENGLISH);
 
@@ -356,7 +332,7 @@ public class DataExportFragment extends EnhancedFragment {
                             for (SessionValue value : entry.getValues()) {
                                 String itemKey = String.format("%s_%s", value.getKey(), value.getStringValue());
                                 try {
-                                    Label cell = new Label(columnMap.get(itemKey), rowIndex, "Yes");
+                                    Label cell = new Label(getColumnIndex(schema, itemKey), rowIndex, "Yes");
                                     sheet.addCell(cell);
                                 } catch (Exception e) {
                                     Log.e(TAG, String.format("item key for set does not exist: %s", itemKey), e);
@@ -372,7 +348,7 @@ public class DataExportFragment extends EnhancedFragment {
                             }
 
                             String content = entry.getSingleValue().getValueAsExportString(getActivity());
-                            sheet.addCell(new Label(columnMap.get(key), rowIndex, content));
+                            sheet.addCell(new Label(getColumnIndex(schema, key), rowIndex, content));
                         } catch (Exception e) {
                             Log.e(TAG, String.format("item key does not exist: %s", key), e);
                         }
@@ -385,7 +361,7 @@ public class DataExportFragment extends EnhancedFragment {
             // immediately available to the user.
             MediaScannerConnection.scanFile(getActivity(),
                     new String[] { exportFile.toString() }, null, (path, uri) -> {
-                        Log.d(TAG, String.format("Success exporting data [path=%s, uri=%s]", path, uri));
+                        Logger.d(TAG, "Success exporting data [path=%s, uri=%s]", path, uri);
                     });
 
         } catch (IOException | WriteException e) {
@@ -406,12 +382,107 @@ public class DataExportFragment extends EnhancedFragment {
         return true;
     }
 
+    private boolean exportAsColumnar(ExportData exportData) {
+        if (exportData.getEntries() == null || exportData.getEntries().size() == 0) {
+            Logger.d(TAG, "Nothing to export for script");
+            return false;
+        }
+
+        final ScriptExportSchema schema = exportData.getSchema();
+        final ColumnarExportWriter writer = new ColumnarExportWriter(schema.getHeaders(), schema.getTypes());
+
+        // Add rows (entries are sorted by session, one row per session)
+        String sessionId = null;
+        for (SessionEntry entry : exportData.getEntries()) {
+            if (sessionId == null || !sessionId.equals(entry.getSessionId())) {
+                sessionId = entry.getSessionId();
+                writer.nextRow();
+            }
+
+            DataType dataType = entry.getDataTypeAsObject();
+            switch (dataType) {
+                case SET_ID:
+                    if (entry.getValues() != null) {
+                        for (SessionValue value : entry.getValues()) {
+                            String itemKey = String.format("%s_%s", value.getKey(), value.getStringValue());
+                            int column = schema.getColumnIndex(itemKey);
+                            if (column != -1) {
+                                writer.setFlag(column);
+                            } else {
+                                Log.e(TAG, String.format("item key for set does not exist: %s", itemKey));
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    String key = entry.getKey();
+                    if (!TextUtils.isEmpty(key) && key.contains(" ")) {
+                        key = key.replaceAll("\\s+", "");
+                    }
+
+                    int column = schema.getColumnIndex(key);
+                    if (column != -1) {
+                        writer.setValue(column, entry.getSingleValue());
+                    } else {
+                        Log.e(TAG, String.format("item key does not exist: %s", key));
+                    }
+            }
+        }
+
+        try {
+            File exportRootDir = Environment.getExternalStoragePublicDirectory("NeoTree");
+            if(!exportRootDir.isDirectory()){
+                if (!exportRootDir.mkdirs()) {
+                    throw new IOException("Error creating output directory: " + exportRootDir.getAbsolutePath());
+                }
+            }
+
+            File noMediaFile = new File(exportRootDir, ".nomedia");
+            if (!noMediaFile.exists()) {
+                if (!noMediaFile.createNewFile()) {
+                    throw new IOException("Error creating .nomedia file: " + noMediaFile.getAbsolutePath());
+                }
+            }
+
+            String title = exportData.getScript().title;
+            String filename = String.format("%s-%s.%s",
+                    DateTime.now().toString(DateTimeFormat.forPattern("yyyyMMddHHmm")),
+                    title.replaceAll("[^a-zA-Z0-9]", "_"),
+                    ColumnarExportWriter.FILE_EXTENSION
+            );
+            File exportFile = new File(exportRootDir, filename);
+
+            writer.write(exportFile);
+
+            // Tell the media scanner about the new file so that it is
+            // immediately available to the user.
+            MediaScannerConnection.scanFile(getActivity(),
+                    new String[] { exportFile.toString() }, null, (path, uri) -> {
+                        Logger.d(TAG, "Success exporting data [path=%s, uri=%s]", path, uri);
+                    });
+        } catch (IOException e) {
+            Log.e(TAG, "Error exporting columnar file", e);
+            Crashlytics.logException(e);
+            return false;
+        }
+        return true;
+    }
+
+    private int getColumnIndex(ScriptExportSchema schema, String key) {
+        final int index = schema.getColumnIndex(key);
+        if (index == -1) {
+            throw new IllegalArgumentException("Unmapped export column: " + key);
+        }
+        return index;
+    }
+
     public boolean exportAsJson(ExportData exportData, Boolean sendToApi) {
         if (exportData.getEntries() == null || exportData.getEntries().size() == 0) {
-            Log.d(TAG, "Nothing to export for script");
+            Logger.d(TAG, "Nothing to export for script");
             return false;
         }
 
+        final long mapStart = MetricsRegistry.startTimer();
         ObjectMapper mapper = new ObjectMapper();
 
         ObjectNode root = mapper.createObjectNode();
@@ -423,23 +494,24 @@ public class DataExportFragment extends EnhancedFragment {
         ArrayNode jsonEntryValues;
         String sessionId = null;
 
-        String postUrl = "<post url>";
-        APIGatewayHelper apiCall = new APIGatewayHelper();
         String currentUIDinLoop = "";
         String currentScriptId = "";
-        String postUrlPlusUID = postUrl;
-        String auth0BearerKey = LoginActivity.auth0key;
         boolean foundUID = false;
         boolean endScriptDatetime = false;
 
+        final ScriptExportSchema schema = exportData.getSchema();
         for (SessionEntry entry : exportData.getEntries()) {
+            // Same rule as the file exports: keys the script marks as confidential are never exported
+            if (schema.isConfidential(entry.getKey())) {
+                continue;
+            }
 
             if (sessionId == null || !sessionId.equals(entry.getSessionId())) {
                 if (jsonSession != null) {
                     jsonSessions.add(jsonSession);
                 }
                 else {
-                    Log.d(TAG, "Looping with sessionID as null");
+                    Logger.d(TAG, "Looping with sessionID as null");
                 }
                 sessionId = entry.getSessionId();
                 jsonSession = mapper.createObjectNode();
@@ -533,23 +605,31 @@ public class DataExportFragment extends EnhancedFragment {
 
             if (currentUIDinLoop.length() > 0) {
                 if (sessionId != null && sendToApi) {
-                    Log.d(TAG, "The same or more SessionEntries >= export...size");
-                    Log.d(TAG, String.format("jsonSessionEntries.size() = %s, exportData.getEntries.size = %s]", jsonSessionEntries.size(), exportData.getEntries().size()));
+                    Logger.d(TAG, "The same or more SessionEntries >= export...size");
+                    Logger.d(TAG, "jsonSessionEntries.size() = %s, exportData.getEntries.size = %s]", jsonSessionEntries.size(), exportData.getEntries().size());
                     if (endScriptDatetime) {
-                        postUrlPlusUID = postUrl + "?uid=\"" + currentUIDinLoop + "\"&scriptId=\"" + currentScriptId + "\"";
+                        // Queued and retried in the background, survives restarts and offline periods
+                        mUploadQueue.enqueue(sessionId, currentScriptId, currentUIDinLoop, jsonSession);
                         currentUIDinLoop = "";
                         currentScriptId = "";
                         endScriptDatetime = false;
-                        boolean postResult = apiCall.postToApi(jsonSession, postUrlPlusUID, auth0BearerKey);
-                        Log.d(TAG, Boolean.toString(postResult));
                     } else {
-                        Log.d(TAG, "Looping without calling");
+                        Logger.d(TAG, "Looping without calling");
                     }
                 }
             }
         }
 
+        MetricsRegistry.get().stopTimer("export.json.map", mapStart);
+
+        // Performance numbers travel with the data so device classes and releases can be compared
+        root.set("metrics", MetricsRegistry.get().snapshot());
+        if (JankMonitor.get().isStarted()) {
+            root.set("jank", JankMonitor.get().report(exportData.getScript().scriptId));
+        }
+
         try {
+            final long writeStart = MetricsRegistry.startTimer();
             File exportRootDir = Environment.getExternalStoragePublicDirectory("NeoTree");
             if(!exportRootDir.isDirectory()){
                 if (!exportRootDir.mkdirs()) {
@@ -573,12 +653,13 @@ public class DataExportFragment extends EnhancedFragment {
 
             // Write JSON output
             mapper.writeValue(exportFile, root);
+            MetricsRegistry.get().stopTimer("export.json.write", writeStart);
 
             // Tell the media scanner about the new file so that it is
             // immediately available to the user.
             MediaScannerConnection.scanFile(getActivity(),
                     new String[] { exportFile.toString() }, null, (path, uri) -> {
-                        Log.d(TAG, String.format("Success exporting data [path=%s, uri=%s]", path, uri));
+                        Logger.d(TAG, "Success exporting data [path=%s, uri=%s]", path, uri);
                     });
 
 
@@ -596,6 +677,7 @@ public class DataExportFragment extends EnhancedFragment {
         private Script mScript;
         private List<Screen> mScreens;
         private List<SessionEntry> mEntries;
+        private ScriptExportSchema mSchema;
 
         public ExportData(Script script, List<Screen> screens, List<SessionEntry> entries) {
             mScript = script;
@@ -603,6 +685,13 @@ public class DataExportFragment extends EnhancedFragment {
             mEntries = entries;
         }
 
+        public ScriptExportSchema getSchema() {
+            if (mSchema == null) {
+                mSchema = ScriptExportSchema.forScript(mScript, mScreens);
+            }
+            return mSchema;
+        }
+
         public Script getScript() {
             return mScript;
         }
@@ -626,9 +715,35 @@ public class DataExportFragment extends EnhancedFragment {
     }
 
     private void showExportInProgress(boolean show) {
-        Log.d(TAG, "Show dialog: " + show);
+        Logger.d(TAG, "Show dialog: %b", show);
         mExportingOverlay.setVisibility((show) ? View.VISIBLE : View.GONE);
         mExportButton.setEnabled(!show);
     }
 
+    private void updateUploadStatus(RealmResults<UploadItem> items) {
+        if (!items.isLoaded() || mUploadStatusText == null) {
+            return;
+        }
+        if (items.isEmpty()) {
+            mUploadStatusText.setText(R.string.label_upload_status_empty);
+            return;
+        }
+
+        int pending = 0;
+        int done = 0;
+        int failed = 0;
+        final StringBuilder errors = new StringBuilder();
+        for (UploadItem item : items) {
+            if (item.isDone()) {
+                done++;
+            } else if (UploadItem.STATUS_FAILED.equals(item.getStatus())) {
+                failed++;
+                errors.append(getString(R.string.label_upload_status_failed, item.getSessionId(), item.getLastError()));
+            } else {
+                pending++;
+            }
+        }
+        mUploadStatusText.setText(getString(R.string.label_upload_status, pending, done, failed) + errors);
+    }
+
 }
@@ -39,15 +39,16 @@ import org.neotree.player.type.FieldType;
 import org.neotree.player.validator.FormManager;
 import org.neotree.support.android.BottomOffsetDecoration;
 import org.neotree.support.android.VerticalSpacingItemDecoration;
-import org.neotree.support.rx.RxHelper;
 import org.neotree.ui.core.ButterknifeViewHolder;
 import org.neotree.ui.view.DateTimeFieldView;
 import org.neotree.ui.view.DropdownFieldView;
+import org.neotree.ui.view.FieldView;
 import org.neotree.ui.view.NumberFieldView;
 import org.neotree.ui.view.PeriodFieldView;
 import org.neotree.ui.view.TextFieldView;
 
 import butterknife.BindView;
+import rx.android.schedulers.AndroidSchedulers;
 
 /**
  * Created by matteo on 14/07/2016.
@@ -79,19 +80,26 @@ public class FormScreenFragment extends AbstractScreenFragment {
         mFormManager = new FormManager(getScreen(), getScriptPlayer());
         mFormManager.subscribe();
 
+        // Field views go back to the shared pool when this screen is replaced, ready for the next form
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        layoutManager.setRecycleChildrenOnDetach(true);
+
         final FormListViewAdapter adapter = new FormListViewAdapter(getActivity(), mFormManager, getScriptPlayer(), getScreen());
+        FormListViewAdapter.configureViewPool(getFieldViewPool());
+        mRecyclerView.setRecycledViewPool(getFieldViewPool());
         mRecyclerView.setAdapter(adapter);
-        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        mRecyclerView.setLayoutManager(layoutManager);
         mRecyclerView.addItemDecoration(new VerticalSpacingItemDecoration(getActivity(), !getScreen().hasContentText(), true));
         mRecyclerView.addItemDecoration(new BottomOffsetDecoration(getActivity(), R.dimen.recycler_view_bottom_spacing));
 
         addSubscription(mFormManager.validFormObservable()
-                .compose(RxHelper.applySchedulers())
+                .distinctUntilChanged()
                 .subscribe(this::setActionNextEnabled)
         );
 
+        // Posted, a field publishing its value while being laid out must not change the adapter
         addSubscription(mFormManager.fieldStatusObservable()
-                .compose(RxHelper.applySchedulers())
+                .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(statusInfo -> adapter.notifyFieldStatusChanged(statusInfo.getIndex()))
         );
     }
@@ -115,6 +123,10 @@ public class FormScreenFragment extends AbstractScreenFragment {
         private static final int VIEW_TYPE_TEXT     = 106;
         private static final int VIEW_TYPE_TIME     = 107;
 
+        private static final int[] FIELD_VIEW_TYPES = { VIEW_TYPE_DATE, VIEW_TYPE_DATETIME, VIEW_TYPE_DROPDOWN,
+                VIEW_TYPE_NUMBER, VIEW_TYPE_PERIOD, VIEW_TYPE_TEXT, VIEW_TYPE_TIME };
+        private static final int MAX_POOLED_VIEWS_PER_TYPE = 12;
+
         private final Context mContext;
         private final FormManager mFormManager;
         private final Metadata mMetadata;
@@ -172,6 +184,20 @@ public class FormScreenFragment extends AbstractScreenFragment {
             return null;
         }
 
+        static void configureViewPool(RecyclerView.RecycledViewPool pool) {
+            for (int viewType : FIELD_VIEW_TYPES) {
+                pool.setMaxRecycledViews(viewType, MAX_POOLED_VIEWS_PER_TYPE);
+            }
+        }
+
+        @Override
+        public void onViewRecycled(RecyclerView.ViewHolder holder) {
+            super.onViewRecycled(holder);
+            if (holder.itemView instanceof FieldView) {
+                ((FieldView) holder.itemView).reset();
+            }
+        }
+
         @Override
         public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
             if (holder instanceof ContentTextItemViewHolder) {
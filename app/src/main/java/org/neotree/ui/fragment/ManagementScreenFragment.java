@@ -19,14 +19,10 @@
 
 package org.neotree.ui.fragment;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
-import android.util.Base64;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -35,11 +31,11 @@ import android.widget.TextView;
 
 import org.neotree.NeoTree;
 import org.neotree.R;
-import org.neotree.model.firebase.FileInfo;
 import org.neotree.model.firebase.Metadata;
 import org.neotree.model.firebase.Screen;
 import org.neotree.model.firebase.Section;
 import org.neotree.support.android.BottomOffsetDecoration;
+import org.neotree.support.android.ImageLoader;
 import org.neotree.support.android.VerticalSpacingItemDecoration;
 import org.neotree.ui.core.ButterknifeViewHolder;
 
@@ -155,28 +151,7 @@ public class ManagementScreenFragment extends AbstractScreenFragment {
                     vh.body.setVisibility(View.GONE);
                 }
 
-                if (section.image != null) {
-                    vh.image.setVisibility(View.GONE);
-
-                    try {
-                        FileInfo info = section.image;
-                        if (TextUtils.isEmpty(info.data)) {
-                            return;
-                        }
-
-                        String base64Data = info.data.substring(info.data.indexOf(',') + 1);
-                        if (TextUtils.isEmpty(info.data)) {
-                            return;
-                        }
-
-                        byte[] decodedString = Base64.decode(base64Data, Base64.DEFAULT);
-                        Bitmap bitmap = BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
-                        vh.image.setImageBitmap(bitmap);
-                        vh.image.setVisibility(View.VISIBLE);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error decoding image", e);
-                    }
-                }
+                ImageLoader.bind(vh.image, section.image);
             }
         }
 
@@ -19,14 +19,11 @@
 
 package org.neotree.ui.fragment;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
-import android.util.Base64;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -43,10 +40,9 @@ import org.neotree.diagnosis.DiagnosisManagement;
 import org.neotree.diagnosis.DiagnosisResult;
 import org.neotree.diagnosis.Doctor;
 import org.neotree.model.firebase.Diagnosis;
-import org.neotree.model.firebase.FileInfo;
-import org.neotree.model.realm.Session;
 import org.neotree.model.realm.SessionEntry;
 import org.neotree.support.android.BottomOffsetDecoration;
+import org.neotree.support.android.ImageLoader;
 import org.neotree.support.datastore.FirebaseStore;
 import org.neotree.support.datastore.RealmStore;
 import org.neotree.support.rx.RxHelper;
@@ -59,7 +55,6 @@ import java.util.List;
 import java.util.Map;
 
 import butterknife.BindView;
-import rx.Observable;
 import rx.exceptions.Exceptions;
 
 /**
@@ -105,9 +100,6 @@ public class SessionDiagnosisFragment extends EnhancedFragment {
 
         mSessionId = getArguments().getString(NeoTree.EXTRA_SESSION_ID);
 
-        Session session = RealmStore.loadSession(getRealm(), mSessionId);
-        mScriptId = session.getScriptId();
-
         mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
 //        mRecyclerView.addItemDecoration(new VerticalSpacingItemDecoration(getActivity(), !getScreen().hasContentText(), true));
         mRecyclerView.addItemDecoration(new BottomOffsetDecoration(getActivity(), R.dimen.recycler_view_bottom_spacing));
@@ -119,12 +111,16 @@ public class SessionDiagnosisFragment extends EnhancedFragment {
     }
 
     private void diagnose() {
-        // Load diagnosis for script
-        addSubscription(FirebaseStore.get().loadDiagnosis(mScriptId)
-                .compose(RxHelper.applySchedulers())
+        // Load diagnosis for the script of the session
+        addSubscription(RealmStore.loadSessionAsync(mSessionId)
+                .flatMap(session -> {
+                    mScriptId = session.getScriptId();
+                    return FirebaseStore.get().loadDiagnosis(mScriptId)
+                            .compose(RxHelper.applySchedulers());
+                })
                 .flatMap(diagnosisList -> {
                     mDiagnosisList = diagnosisList;
-                    return Observable.just(RealmStore.loadEntriesForSession(getRealm(), mSessionId, false));
+                    return RealmStore.loadEntriesForSessionAsync(mSessionId, false);
                 })
                 .map(sessionEntries -> {
                     for (SessionEntry entry : sessionEntries) {
@@ -215,28 +211,7 @@ public class SessionDiagnosisFragment extends EnhancedFragment {
                     vh.text.setVisibility(View.GONE);
                 }
 
-                if (management.fileInfo != null) {
-                    vh.image.setVisibility(View.GONE);
-
-                    try {
-                        FileInfo info = management.fileInfo;
-                        if (TextUtils.isEmpty(info.data)) {
-                            return;
-                        }
-
-                        String base64Data = info.data.substring(info.data.indexOf(',') + 1);
-                        if (TextUtils.isEmpty(info.data)) {
-                            return;
-                        }
-
-                        byte[] decodedString = Base64.decode(base64Data, Base64.DEFAULT);
-                        Bitmap bitmap = BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
-                        vh.image.setImageBitmap(bitmap);
-                        vh.image.setVisibility(View.VISIBLE);
-                    } catch (Exception e) {
-                        Log.e(logTag(), "Error decoding image", e);
-                    }
-                }
+                ImageLoader.bind(vh.image, management.fileInfo);
             }
         }
 
@@ -37,10 +37,6 @@ import android.view.ViewGroup;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.GenericTypeIndicator;
-
 import org.joda.time.DateTime;
 import org.neotree.NeoTree;
 import org.neotree.R;
@@ -51,15 +47,11 @@ import org.neotree.model.realm.Session;
 import org.neotree.support.android.VerticalSpacingItemDecoration;
 import org.neotree.support.datastore.FirebaseStore;
 import org.neotree.support.datastore.RealmStore;
-import org.neotree.support.rx.RxFirebase;
 import org.neotree.support.rx.RxHelper;
 import org.neotree.support.rx.data.Pair;
 import org.neotree.ui.core.ButterknifeViewHolder;
 import org.neotree.ui.core.EnhancedFragment;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -75,8 +67,6 @@ import rx.Observable;
 
 public class SessionHistoryListFragment extends EnhancedFragment
         implements View.OnClickListener, View.OnLongClickListener {
-    private static final String SCRIPTS = "scripts";
-    public static final GenericTypeIndicator TYPE_SCRIPTS_LIST = new GenericTypeIndicator<Map<String, Script>>() {};
 
     public static SessionHistoryListFragment newInstance() {
         Bundle args = new Bundle();
@@ -148,29 +138,21 @@ public class SessionHistoryListFragment extends EnhancedFragment
     }
 
     @Override
-    protected void onEventReceived(Object event) {
-        if (event instanceof RefreshSessionListEvent) {
-            reloadSessions();
-        }
+    protected void onSubscribeEvents() {
+        subscribeEvent(RefreshSessionListEvent.class, event -> reloadSessions());
     }
 
     private void reloadSessions() {
         RealmStore.loadSessions(getRealm(), result -> {
             if (result.isLoaded()) {
 
-                //  List<Script> scripts = FirebaseStore.get().loadScriptsSync();
-                DatabaseReference query = FirebaseDatabase.getInstance().getReference().child(SCRIPTS);
-                RxFirebase.observeOnce(query, TYPE_SCRIPTS_LIST)
-                        .subscribe(userData -> {
-                                    List<Script> script = convertMapToList((Map<String, Script>) userData);
-                                    mListAdapter = new SessionListAdapter(getActivity(), result, script);
+                addSubscription(FirebaseStore.get().loadScripts()
+                        .subscribe(scripts -> {
+                                    mListAdapter = new SessionListAdapter(getActivity(), result, scripts);
                                     mRecyclerView.setAdapter(mListAdapter);
                                     result.removeAllChangeListeners();
-
                                 },
-                                throwable -> {Log.e("Error","Error");
-                                });
-
+                                throwable -> Log.e(logTag(), "Error loading scripts", throwable)));
             }
         });
     }
@@ -266,21 +248,4 @@ public class SessionHistoryListFragment extends EnhancedFragment
             wrapper.setTag(tag);
         }
     }
-    private <K, V> List<V> convertMapToList(Map<K, V> map) {
-        return convertMapToList(map, null);
-    }
-
-    private <K, V> List<V> convertMapToList(Map<K, V> map, Comparator<V> comparator) {
-        final ArrayList<V> list = new ArrayList<>();
-        if (map != null) {
-            for (K key : map.keySet()) {
-                list.add(map.get(key));
-            }
-        }
-
-        if (comparator != null) {
-            Collections.sort(list, comparator);
-        }
-        return list;
-    }
 }
@@ -131,8 +131,7 @@ public class SessionSummaryFragment extends EnhancedFragment {
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == NeoTreeHelper.REQUEST_CODE_ADMIN_UNLOCK) {
             if (resultCode == Activity.RESULT_OK) {
-                mConfidential = false;
-                loadSessionEntries();
+                onAdminUnlocked();
             }
         } else {
             super.onActivityResult(requestCode, resultCode, data);
@@ -162,7 +161,12 @@ public class SessionSummaryFragment extends EnhancedFragment {
     }
 
     private void showAdminUnlockDialog() {
-        NeoTreeHelper.showAdminUnlockDialog(this);
+        NeoTreeHelper.showAdminUnlockDialog(this, this::onAdminUnlocked);
+    }
+
+    private void onAdminUnlocked() {
+        mConfidential = false;
+        loadSessionEntries();
     }
 
     private class SessionEntryAdapter extends RealmRecyclerViewAdapter<SessionEntry, RecyclerView.ViewHolder>
@@ -94,6 +94,12 @@ public class DateTimeFieldView extends FieldView<DateTime>
         publishValue(value);
     }
 
+    @Override
+    protected void onResetFieldView() {
+        mDateValueButton.setText(null);
+        mTimeValueButton.setText(null);
+    }
+
     @Override
     protected void onEnabledStateChanged(boolean enabled) {
         mDateValueButton.setEnabled(enabled);
@@ -27,10 +27,8 @@ import android.widget.Button;
 
 import org.neotree.R;
 import org.neotree.model.firebase.Field;
+import org.neotree.player.DropdownOptions;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
-import java.util.ArrayList;
 
 import butterknife.BindView;
 import butterknife.OnClick;
@@ -43,8 +41,7 @@ public class DropdownFieldView extends FieldView<String> {
     @BindView(R.id.field_dropdown_button)
     Button mValueButton;
 
-    private ArrayList<String> mValueIds;
-    private ArrayList<CharSequence> mValueLabels;
+    private DropdownOptions mOptions;
 
     public DropdownFieldView(Context context) {
         this(context, null);
@@ -82,6 +79,12 @@ public class DropdownFieldView extends FieldView<String> {
         setValueByIndex(index);
     }
 
+    @Override
+    protected void onResetFieldView() {
+        mValueButton.setText(null);
+        mOptions = null;
+    }
+
     @Override
     protected void onEnabledStateChanged(boolean enabled) {
         mValueButton.setEnabled(enabled);
@@ -93,35 +96,22 @@ public class DropdownFieldView extends FieldView<String> {
                     String.format("Values MUST be set for the dropdown field \"%s\"", getField().label));
         }
 
-        mValueIds = new ArrayList<>();
-        mValueLabels = new ArrayList<>();
-
         try {
-            BufferedReader reader = new BufferedReader(new StringReader(values));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] item = line.split(",");
-                mValueIds.add(item[0].trim());
-                mValueLabels.add(item[1].trim());
-            }
-        } catch (Exception e) {
+            mOptions = DropdownOptions.of(values);
+        } catch (IllegalArgumentException e) {
             throw new IllegalStateException(
                     String.format("The dropdown field \"%s\" contains invalid values", getField().label), e);
         }
     }
 
-    public ArrayList<String> getValueIds() {
-        return mValueIds;
-    }
-
-    public ArrayList<CharSequence> getValueLabels() {
-        return mValueLabels;
+    public DropdownOptions getOptions() {
+        return mOptions;
     }
 
     @OnClick(R.id.field_dropdown_button)
     public void showDropdownMenu() {
-        CharSequence[] items = new CharSequence[mValueLabels.size()];
-        mValueLabels.toArray(items);
+        CharSequence[] items = new CharSequence[mOptions.size()];
+        mOptions.getLabels().toArray(items);
 
         int itemIndex = getCheckedItemIndex(getValue());
 
@@ -137,22 +127,13 @@ public class DropdownFieldView extends FieldView<String> {
     }
 
     private void setValueByIndex(int index) {
-        String value = mValueIds.get(index);
-        mValueButton.setText(mValueLabels.get(index));
+        String value = mOptions.getId(index);
+        mValueButton.setText(mOptions.getLabel(index));
         publishValue(value);
     }
 
     private int getCheckedItemIndex(String value) {
-        int index = -1;
-        if (!TextUtils.isEmpty(value)) {
-            for (int i = 0; i < mValueIds.size(); i++) {
-                if (mValueIds.get(i).equals(value)) {
-                    index = i;
-                    break;
-                }
-            }
-        }
-        return index;
+        return (TextUtils.isEmpty(value)) ? -1 : mOptions.indexOf(value);
     }
 
 }
@@ -23,7 +23,6 @@ import android.content.Context;
 import android.os.Parcelable;
 import android.text.TextUtils;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.TextView;
@@ -32,13 +31,16 @@ import org.neotree.R;
 import org.neotree.model.firebase.Field;
 import org.neotree.player.ScriptPlayer;
 import org.neotree.support.datastore.RealmStore;
+import org.neotree.support.android.Logger;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import rx.Observable;
 import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
 import rx.subjects.BehaviorSubject;
 import rx.subscriptions.CompositeSubscription;
 
@@ -66,6 +68,7 @@ public abstract class FieldView<V> extends FrameLayout {
 
     private static AtomicInteger sAtomicInteger = new AtomicInteger();
     private String mViewIdentity = String.format("field-%d", sAtomicInteger.incrementAndGet());
+    private String mLogTag;
 
     private final BehaviorSubject<V> mValueSubject = BehaviorSubject.create();
 
@@ -80,6 +83,10 @@ public abstract class FieldView<V> extends FrameLayout {
     private CompositeSubscription mSubscription;
     private ScriptPlayer mScriptPlayer;
 
+    // Zero publishes every value straight away
+    private long mPublishIdleMillis;
+    private Subscription mPendingCommit;
+
     private Field mField;
 
     public FieldView(Context context) {
@@ -101,7 +108,7 @@ public abstract class FieldView<V> extends FrameLayout {
                 ViewGroup.LayoutParams.WRAP_CONTENT));
 
 
-        Log.v(logTag(), "Binding field view");
+        Logger.v(logTag(), "Binding field view");
         ButterKnife.bind(this, this);
     }
 
@@ -128,22 +135,24 @@ public abstract class FieldView<V> extends FrameLayout {
 
         V value = null;
         if (mScriptPlayer != null) {
-            Log.v(logTag(), String.format("Restoring field value [key=%s]", mField.key));
+            Logger.v(logTag(), "Restoring field value [key=%s]", mField.key);
             value = restoreValue();
-            Log.v(logTag(), String.format("Restored value [key=%s, value=%s]", mField.key, value));
+            Logger.v(logTag(), "Restored value [key=%s, value=%s]", mField.key, value);
         }
         setValue(mValueAdapter.onReadValue(value));
 
-        Log.v(logTag(), String.format("Registering subscriptions [key=%s]", mField.key));
+        Logger.v(logTag(), "Registering subscriptions [key=%s]", mField.key);
         onRegisterSubscribers(getField());
     }
 
     @Override
     protected void onDetachedFromWindow() {
-        Log.v(logTag(), String.format("onDetachedFromWindow() [key=%s]", mField.key));
+        Logger.v(logTag(), "onDetachedFromWindow() [key=%s]", mField.key);
         super.onDetachedFromWindow();
 
-        Log.v(logTag(), String.format("Removing all subscriptions [key=%s]", mField.key));
+        commitPendingValue();
+
+        Logger.v(logTag(), "Removing all subscriptions [key=%s]", mField.key);
         if (mSubscription != null && mSubscription.hasSubscriptions()
                 && !mSubscription.isUnsubscribed()) {
             mSubscription.unsubscribe();
@@ -151,15 +160,42 @@ public abstract class FieldView<V> extends FrameLayout {
         mSubscription = null;
     }
 
+    /**
+     * Clears the binding to the current field so the view can be pooled and bound to another field.
+     * Must be called while detached, nothing is published to the script player.
+     */
+    public void reset() {
+        cancelPendingCommit();
+        if (mSubscription != null && !mSubscription.isUnsubscribed()) {
+            mSubscription.unsubscribe();
+        }
+        mSubscription = null;
+
+        onResetFieldView();
+
+        mField = null;
+        mValue = null;
+        mScriptPlayer = null;
+        mValueAdapter = new DefaultValueAdapter<>();
+
+        mLabelText.setText(null);
+        mErrorText.setText(null);
+        showError(false);
+    }
+
+    protected void onResetFieldView() {
+        // Do nothing by default
+    }
+
     @Override
     protected Parcelable onSaveInstanceState() {
-        Log.v(logTag(), String.format("onSaveInstanceState() [key=%s]", mField.key));
+        Logger.v(logTag(), "onSaveInstanceState() [key=%s]", mField.key);
         return super.onSaveInstanceState();
     }
 
     @Override
     protected void onRestoreInstanceState(Parcelable state) {
-        Log.v(logTag(), String.format("onRestoreInstanceState() [key=%s]", mField.key));
+        Logger.v(logTag(), "onRestoreInstanceState() [key=%s]", mField.key);
         super.onRestoreInstanceState(state);
     }
 
@@ -175,7 +211,11 @@ public abstract class FieldView<V> extends FrameLayout {
     }
 
     public String logTag() {
-        return String.format("%s [%s]", getClass().getSimpleName(), mViewIdentity);
+        // Built once, it is passed on every log call even when the level is disabled
+        if (mLogTag == null) {
+            mLogTag = String.format("%s [%s]", getClass().getSimpleName(), mViewIdentity);
+        }
+        return mLogTag;
     }
 
     public Field getField() {
@@ -205,12 +245,48 @@ public abstract class FieldView<V> extends FrameLayout {
         mValueSubject.onNext(storeValue);
 
         if (mScriptPlayer != null) {
-            Log.v(logTag(), String.format("Publishing value [key=%s]", mField.key));
-            mScriptPlayer.setValue(mField.key, storeValue);
-            mScriptPlayer.storeValue(getScriptPlayer().currentScreen().sectionTitle, RealmStore.getSessionValue(mField, storeValue));
+            Logger.v(logTag(), "Publishing value [key=%s]", mField.key);
+            final ScriptPlayer scriptPlayer = mScriptPlayer;
+            final Field field = mField;
+            if (mPublishIdleMillis > 0) {
+                // Conditions and storage catch up once typing pauses or the field loses focus
+                scriptPlayer.updateValue(field.key, storeValue, () -> scriptPlayer.storeValue(
+                        scriptPlayer.currentScreen().sectionTitle, RealmStore.getSessionValue(field, storeValue)));
+                schedulePendingCommit();
+            } else {
+                scriptPlayer.setValue(field.key, storeValue);
+                scriptPlayer.storeValue(scriptPlayer.currentScreen().sectionTitle, RealmStore.getSessionValue(field, storeValue));
+            }
+        }
+    }
+
+    /**
+     * Commits a value held back by the publish idle delay, if any.
+     */
+    protected void commitPendingValue() {
+        cancelPendingCommit();
+        if (mScriptPlayer != null && mField != null) {
+            mScriptPlayer.commitValue(mField.key);
         }
     }
 
+    private void schedulePendingCommit() {
+        cancelPendingCommit();
+        mPendingCommit = Observable.timer(mPublishIdleMillis, TimeUnit.MILLISECONDS, AndroidSchedulers.mainThread())
+                .subscribe(tick -> commitPendingValue());
+    }
+
+    private void cancelPendingCommit() {
+        if (mPendingCommit != null) {
+            mPendingCommit.unsubscribe();
+            mPendingCommit = null;
+        }
+    }
+
+    public void setPublishIdleMillis(long publishIdleMillis) {
+        mPublishIdleMillis = publishIdleMillis;
+    }
+
     protected ScriptPlayer getScriptPlayer() {
         return mScriptPlayer;
     }
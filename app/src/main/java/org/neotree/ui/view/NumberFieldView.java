@@ -59,6 +59,12 @@ public class NumberFieldView extends FieldView<Double> {
 
     public NumberFieldView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        setPublishIdleMillis(getResources().getInteger(R.integer.field_publish_idle_millis));
+        mValueInput.setOnFocusChangeListener((view, hasFocus) -> {
+            if (!hasFocus) {
+                commitPendingValue();
+            }
+        });
     }
 
     @Override
@@ -131,6 +137,14 @@ public class NumberFieldView extends FieldView<Double> {
         mValueInput.setText((value != null) ? value.toString() : null);
     }
 
+    @Override
+    protected void onResetFieldView() {
+        mValueInput.setText(null);
+        mValueInput.setFilters(new InputFilter[0]);
+        mValueInput.clearFocus();
+        mFormat = null;
+    }
+
     @Override
     protected void onEnabledStateChanged(boolean enabled) {
         mValueInput.setEnabled(enabled);
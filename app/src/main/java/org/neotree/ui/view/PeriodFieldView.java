@@ -98,6 +98,11 @@ public class PeriodFieldView extends FieldView<Period> {
         publishValue(value);
     }
 
+    @Override
+    protected void onResetFieldView() {
+        mPeriodValueButton.setText(null);
+    }
+
     @Override
     protected void onEnabledStateChanged(boolean enabled) {
         mPeriodValueButton.setEnabled(enabled);
@@ -65,6 +65,12 @@ public class TextFieldView extends FieldView<CharSequence> {
 
     public TextFieldView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        setPublishIdleMillis(getResources().getInteger(R.integer.field_publish_idle_millis));
+        mValueInput.setOnFocusChangeListener((view, hasFocus) -> {
+            if (!hasFocus) {
+                commitPendingValue();
+            }
+        });
         mValueInput.addTextChangedListener(new TextWatcher() {
             Boolean editing = false;
 
@@ -88,6 +94,7 @@ public class TextFieldView extends FieldView<CharSequence> {
     }
 
     public String parseNUID(String s) {
+        if (getField() == null) return s;
         if (!(getField().key.equals("NUID_S") || getField().key.equals("NUID_NS"))) return s;
 
         s = s.replaceAll("[^a-fA-F0-9]", "");
@@ -148,6 +155,13 @@ public class TextFieldView extends FieldView<CharSequence> {
         mValueInput.setText(value);
     }
 
+    @Override
+    protected void onResetFieldView() {
+        mValueInput.setText(null);
+        mValueInput.clearFocus();
+        value = null;
+    }
+
     @Override
     protected void onEnabledStateChanged(boolean enabled) {
         mValueInput.setEnabled(enabled);
@@ -0,0 +1,59 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package org.mindrot.jbcrypt;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times hashpw and checkpw for the cost factors worth considering for the admin password. The
+ * JVM runs several times faster than the tablets in the field, scale the numbers accordingly
+ * against the admin.password_check metrics before picking a cost.
+ */
+public class BCryptCostTest {
+
+    private static final String PASSWORD = "neotree-admin";
+    private static final int MIN_COST = 8;
+    private static final int MAX_COST = 12;
+    private static final int CHECKS = 3;
+
+    @Test
+    public void timeHashAndCheckPerCost() {
+        // Warm up the JIT on the cheapest cost so the first row is not skewed
+        BCrypt.checkpw(PASSWORD, BCrypt.hashpw(PASSWORD, BCrypt.gensalt(MIN_COST)));
+
+        for (int cost = MIN_COST; cost <= MAX_COST; cost++) {
+            long start = System.nanoTime();
+            final String hash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost));
+            final long hashMillis = (System.nanoTime() - start) / 1000000;
+
+            start = System.nanoTime();
+            for (int i = 0; i < CHECKS; i++) {
+                assertTrue(BCrypt.checkpw(PASSWORD, hash));
+            }
+            final long checkMillis = (System.nanoTime() - start) / 1000000 / CHECKS;
+            assertFalse(BCrypt.checkpw(PASSWORD + "x", hash));
+
+            System.out.println(String.format("BCrypt [cost=%d, hashpw=%dms, checkpw=%dms]", cost, hashMillis, checkMillis));
+        }
+    }
+
+}
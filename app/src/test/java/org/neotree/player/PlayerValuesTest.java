@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package org.neotree.player;
+
+import org.junit.Test;
+import org.neotree.player.validator.KeyValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerValuesTest {
+
+    private static final String[] KEYSTROKES = { "J", "Jo", "Joh", "John", "Joh", "John" };
+
+    /** Announced changes and stored values, the two things value writes feed */
+    private static class Recorder {
+        final List<KeyValue> changes = new ArrayList<>();
+        final Map<String, Object> stored = new HashMap<>();
+        final PlayerValues values = new PlayerValues(changes::add);
+
+        void setAndStore(String key, Object value) {
+            values.set(key, value);
+            stored.put(key.trim(), value);
+        }
+
+        void updateDeferred(String key, Object value) {
+            values.update(key, value, () -> stored.put(key.trim(), value));
+        }
+
+        Object lastAnnounced(String key) {
+            Object last = null;
+            for (KeyValue change : changes) {
+                if (change.getKey().equals(key)) {
+                    last = change.getValue();
+                }
+            }
+            return last;
+        }
+    }
+
+    @Test
+    public void deferredWritesEndInTheSameStateAsPerKeystrokeWrites() {
+        final Recorder immediate = new Recorder();
+        final Recorder deferred = new Recorder();
+
+        for (String text : KEYSTROKES) {
+            immediate.setAndStore("name", text);
+            deferred.updateDeferred("name", text);
+        }
+        immediate.setAndStore("age", 3.0);
+        deferred.updateDeferred("age", 3.0);
+        deferred.values.commitAll();
+
+        assertEquals(immediate.values.asMap(), deferred.values.asMap());
+        assertEquals(immediate.stored, deferred.stored);
+        assertEquals(immediate.lastAnnounced("name"), deferred.lastAnnounced("name"));
+        assertEquals(immediate.lastAnnounced("age"), deferred.lastAnnounced("age"));
+
+        // One announcement per committed key instead of one per keystroke
+        assertEquals(KEYSTROKES.length + 1, immediate.changes.size());
+        assertEquals(2, deferred.changes.size());
+    }
+
+    @Test
+    public void pendingValueIsVisibleBeforeCommit() {
+        final Recorder deferred = new Recorder();
+        deferred.updateDeferred(" name ", "Jo");
+
+        assertEquals("Jo", deferred.values.get("name"));
+        assertTrue(deferred.values.hasPending("name"));
+        assertTrue(deferred.changes.isEmpty());
+        assertTrue(deferred.stored.isEmpty());
+    }
+
+    @Test
+    public void immediateWriteSupersedesPendingValue() {
+        final Recorder recorder = new Recorder();
+        recorder.updateDeferred("name", "Jo");
+        recorder.setAndStore("name", null);
+        recorder.values.commitAll();
+
+        assertFalse(recorder.values.hasPending("name"));
+        assertEquals(null, recorder.values.get("name"));
+        assertEquals(null, recorder.stored.get("name"));
+        assertEquals(1, recorder.changes.size());
+    }
+
+    @Test
+    public void typingBackToTheCommittedValueStillCommits() {
+        final Recorder immediate = new Recorder();
+        final Recorder deferred = new Recorder();
+        immediate.setAndStore("name", "John");
+        deferred.setAndStore("name", "John");
+
+        for (String text : new String[] { "Joh", "John" }) {
+            immediate.setAndStore("name", text);
+            deferred.updateDeferred("name", text);
+        }
+        deferred.values.commitAll();
+
+        assertEquals(immediate.values.asMap(), deferred.values.asMap());
+        assertEquals(immediate.stored, deferred.stored);
+        assertEquals(immediate.lastAnnounced("name"), deferred.lastAnnounced("name"));
+    }
+
+}
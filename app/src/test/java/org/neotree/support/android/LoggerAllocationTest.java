@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package org.neotree.support.android;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Bytes allocated per evaluated condition by the debug log call of BooleanExpressionEvaluator, in
+ * a release build: Logger drops the body, the call site either still builds its arguments or is
+ * guarded by a constant false BuildConfig.DEBUG.
+ */
+public class LoggerAllocationTest {
+
+    private static final String TAG = LoggerAllocationTest.class.getSimpleName();
+
+    // Stands in for BuildConfig.DEBUG of a release build
+    private static final boolean DEBUG = false;
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 200000;
+
+    @Test
+    public void guardedCallSiteDoesNotAllocate() {
+        Logger.setLevel(TAG, Log.ASSERT);
+
+        final long unguarded = bytesPerCall(LoggerAllocationTest::unguarded);
+        final long guarded = bytesPerCall(LoggerAllocationTest::guarded);
+        System.out.println(String.format("Logger.d 4 args [unguarded=%d B/call, guarded=%d B/call]", unguarded, guarded));
+
+        assertEquals(0, guarded);
+    }
+
+    private static void unguarded(int i) {
+        final double value = i;
+        final boolean result = (i & 1) == 0;
+        Logger.d(TAG, "Number expr: %s %s %.2f -> %b", "weight", "GT", value, result);
+    }
+
+    private static void guarded(int i) {
+        final double value = i;
+        final boolean result = (i & 1) == 0;
+        if (DEBUG) {
+            Logger.d(TAG, "Number expr: %s %s %.2f -> %b", "weight", "GT", value, result);
+        }
+    }
+
+    private interface Call {
+        void run(int i);
+    }
+
+    private static long bytesPerCall(Call call) {
+        for (int i = 0; i < WARMUP; i++) {
+            call.run(i);
+        }
+        final long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.run(i);
+        }
+        // Measuring itself allocates a few bytes, they round away per call
+        return (allocatedBytes() - before) / ITERATIONS;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
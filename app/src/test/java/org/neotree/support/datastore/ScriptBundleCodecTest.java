@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package org.neotree.support.datastore;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+import org.neotree.model.firebase.Diagnosis;
+import org.neotree.model.firebase.Field;
+import org.neotree.model.firebase.Item;
+import org.neotree.model.firebase.Metadata;
+import org.neotree.model.firebase.Screen;
+import org.neotree.model.firebase.Symptom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round trip of the bundle codec, and its decode time against the Jackson mapping the cache used
+ * before, for a bundle larger than any script in use.
+ */
+public class ScriptBundleCodecTest {
+
+    private static final int SCREENS = 400;
+    private static final int FIELDS = 12;
+    private static final int ITEMS = 8;
+    private static final int DIAGNOSIS = 80;
+    private static final int SYMPTOMS = 10;
+
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 20;
+
+    // Same configuration as the JSON bundle cache that the codec replaced
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.PUBLIC_ONLY)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final TypeReference<Map<String, Screen>> SCREEN_MAP = new TypeReference<Map<String, Screen>>() {};
+
+    @Test
+    public void roundTrip() throws IOException {
+        final ScriptBundle bundle = syntheticBundle();
+        final ScriptBundle decoded = ScriptBundleCodec.decode(ByteBuffer.wrap(encode(bundle)));
+
+        assertEquals(bundle.scriptId, decoded.scriptId);
+        assertEquals(bundle.scriptUpdatedAt, decoded.scriptUpdatedAt);
+        assertEquals(SCREENS, decoded.screens.size());
+        assertEquals(DIAGNOSIS, decoded.diagnosis.size());
+
+        final Screen screen = decoded.screens.get(SCREENS - 1);
+        assertEquals(bundle.screens.get(SCREENS - 1).screenId, screen.screenId);
+        assertEquals(bundle.screens.get(SCREENS - 1).condition, screen.condition);
+        assertEquals(FIELDS, screen.metadata.fields.size());
+        assertEquals(ITEMS, screen.metadata.items.size());
+        assertEquals(bundle.screens.get(SCREENS - 1).metadata.fields.get(FIELDS - 1).key,
+                screen.metadata.fields.get(FIELDS - 1).key);
+        assertEquals(SYMPTOMS, decoded.diagnosis.get(DIAGNOSIS - 1).symptoms.size());
+    }
+
+    @Test
+    public void decodeTimeAgainstJackson() throws IOException {
+        final ScriptBundle bundle = syntheticBundle();
+
+        final byte[] codecBytes = encode(bundle);
+        final byte[] bundleJson = MAPPER.writeValueAsBytes(bundle);
+        final Map<String, Screen> screens = new LinkedHashMap<>();
+        for (Screen screen : bundle.screens) {
+            screens.put(screen.screenId, screen);
+        }
+        final byte[] screensJson = MAPPER.writeValueAsBytes(screens);
+
+        final double codecMillis = time(() -> ScriptBundleCodec.decode(ByteBuffer.wrap(codecBytes)));
+        final double bundleMillis = time(() -> MAPPER.readValue(bundleJson, ScriptBundle.class));
+        final double screensMillis = time(() -> MAPPER.readValue(screensJson, SCREEN_MAP));
+
+        System.out.println(String.format("Bundle decode [codec=%.2fms (%d bytes), jackson bundle=%.2fms (%d bytes), "
+                        + "jackson Map<String, Screen>=%.2fms (%d bytes)]",
+                codecMillis, codecBytes.length, bundleMillis, bundleJson.length, screensMillis, screensJson.length));
+    }
+
+    private interface Decode {
+        Object run() throws IOException;
+    }
+
+    private static double time(Decode decode) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            decode.run();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decode.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+    }
+
+    private static byte[] encode(ScriptBundle bundle) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ScriptBundleCodec.encode(bundle, out);
+        return out.toByteArray();
+    }
+
+    private static ScriptBundle syntheticBundle() {
+        final ScriptBundle bundle = new ScriptBundle("-script");
+        bundle.scriptUpdatedAt = 1500000000000L;
+        bundle.screens = new ArrayList<>();
+        for (int s = 0; s < SCREENS; s++) {
+            final Screen screen = new Screen();
+            screen.screenId = "-screen" + s;
+            screen.position = s;
+            screen.type = (s % 2 == 0) ? "form" : "checklist";
+            screen.title = "Screen " + s;
+            screen.sectionTitle = "Section " + (s / 20);
+            screen.actionText = "Assess the baby and record the findings";
+            screen.condition = "$Screen" + (s - 1) + " = true and $Weight > 1500";
+            screen.updatedAt = bundle.scriptUpdatedAt;
+
+            final Metadata metadata = new Metadata();
+            metadata.key = "Screen" + s;
+            metadata.dataType = "set<id>";
+            metadata.fields = new ArrayList<>();
+            for (int f = 0; f < FIELDS; f++) {
+                final Field field = new Field();
+                field.key = "Field" + s + "_" + f;
+                field.label = "Field label " + f;
+                field.type = "number";
+                field.dataType = "number";
+                field.minValue = "0";
+                field.maxValue = "5000";
+                field.position = f;
+                field.condition = (f % 3 == 0) ? "$Screen" + s + " = \"Y\"" : null;
+                metadata.fields.add(field);
+            }
+            metadata.items = new ArrayList<>();
+            for (int i = 0; i < ITEMS; i++) {
+                final Item item = new Item();
+                item.id = "Item" + i;
+                item.label = "Item label " + i;
+                item.dataType = "id";
+                item.position = i;
+                metadata.items.add(item);
+            }
+            screen.metadata = metadata;
+            bundle.screens.add(screen);
+        }
+
+        bundle.diagnosis = new ArrayList<>();
+        for (int d = 0; d < DIAGNOSIS; d++) {
+            final Diagnosis diagnosis = new Diagnosis();
+            diagnosis.diagnosisId = "-diagnosis" + d;
+            diagnosis.name = "Diagnosis " + d;
+            diagnosis.description = "Management of diagnosis " + d;
+            diagnosis.expression = "$Temperature > 37.5 and $Screen" + d + " = true";
+            diagnosis.symptoms = new ArrayList<>();
+            for (int s = 0; s < SYMPTOMS; s++) {
+                final Symptom symptom = new Symptom();
+                symptom.type = (s % 2 == 0) ? "risk" : "sign";
+                symptom.name = "Symptom " + s;
+                symptom.weight = String.valueOf(s);
+                symptom.expression = "$Field" + d + "_" + s + " > 0";
+                diagnosis.symptoms.add(symptom);
+            }
+            bundle.diagnosis.add(diagnosis);
+        }
+        return bundle;
+    }
+
+}
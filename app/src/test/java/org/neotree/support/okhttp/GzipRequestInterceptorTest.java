@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package org.neotree.support.okhttp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.GzipSource;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Posts a large session the way uploads were sent before (document built as a String, sent
+ * uncompressed) and the way they are sent now (streamed through the gzip interceptor), and
+ * reports bytes on the wire and bytes allocated by the calling thread for each.
+ */
+public class GzipRequestInterceptorTest {
+
+    private static final int ENTRIES = 3000;
+    private static final int WARMUP = 3;
+
+    private final ObjectMapper mMapper = new ObjectMapper();
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void streamedGzipBodyAgainstStringBody() throws Exception {
+        final ObjectNode session = largeSession();
+        final OkHttpClient plainClient = new OkHttpClient();
+        final OkHttpClient gzipClient = plainClient.newBuilder()
+                .addInterceptor(new GzipRequestInterceptor())
+                .build();
+
+        for (int i = 0; i < WARMUP; i++) {
+            postString(plainClient, session);
+            postStreamed(gzipClient, session);
+        }
+
+        final long stringAllocated = postString(plainClient, session);
+        final long streamedAllocated = postStreamed(gzipClient, session);
+
+        RecordedRequest string = null;
+        RecordedRequest streamed = null;
+        for (int i = 0; i < 2 * (WARMUP + 1); i++) {
+            final RecordedRequest request = mServer.takeRequest();
+            if (request.getHeader(GzipRequestInterceptor.HEADER_CONTENT_ENCODING) == null) {
+                string = request;
+            } else {
+                streamed = request;
+            }
+        }
+
+        assertNull(string.getHeader(GzipRequestInterceptor.HEADER_CONTENT_ENCODING));
+        assertEquals(GzipRequestInterceptor.ENCODING_GZIP, streamed.getHeader(GzipRequestInterceptor.HEADER_CONTENT_ENCODING));
+        assertEquals(session, mMapper.readTree(Okio.buffer(new GzipSource(streamed.getBody())).inputStream()));
+        assertTrue(streamed.getBodySize() < string.getBodySize());
+
+        System.out.println(String.format("Session upload [string: wire=%d bytes, allocated=%d bytes; "
+                        + "streamed gzip: wire=%d bytes, allocated=%d bytes]",
+                string.getBodySize(), stringAllocated, streamed.getBodySize(), streamedAllocated));
+    }
+
+    private long postString(OkHttpClient client, ObjectNode session) throws IOException {
+        final long before = allocatedBytes();
+        execute(client, RequestBody.create(JsonRequestBody.JSON, mMapper.writeValueAsString(session)));
+        return allocatedBytes() - before;
+    }
+
+    private long postStreamed(OkHttpClient client, ObjectNode session) throws IOException {
+        final long before = allocatedBytes();
+        execute(client, JsonRequestBody.create(mMapper, session));
+        return allocatedBytes() - before;
+    }
+
+    private void execute(OkHttpClient client, RequestBody body) throws IOException {
+        mServer.enqueue(new MockResponse().setResponseCode(200));
+        final Request request = new Request.Builder()
+                .url(mServer.url("/sessions"))
+                .post(body)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+        }
+    }
+
+    // Synchronous calls write the request body on the calling thread
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Shaped like an exported session: one entry per answered field */
+    private ObjectNode largeSession() {
+        final ObjectNode session = mMapper.createObjectNode();
+        session.put("sessionId", 1234);
+        session.put("scriptId", "-KO1TK4zMvLhxTw6eKia");
+        session.put("uid", "0012-3456");
+        final ArrayNode entries = session.putArray("entries");
+        for (int i = 0; i < ENTRIES; i++) {
+            final ObjectNode entry = entries.addObject();
+            entry.put("key", "Field" + i);
+            entry.put("type", (i % 3 == 0) ? "dropdown" : "number");
+            final ObjectNode values = entry.putObject("values");
+            values.putArray("label").add("Label of field " + i);
+            values.putArray("value").add(String.valueOf(i * 7 % 1000));
+        }
+        return session;
+    }
+
+}
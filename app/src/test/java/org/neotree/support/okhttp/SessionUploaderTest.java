@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Ubiqueworks Ltd and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED
+ * TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT
+ * SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package org.neotree.support.okhttp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+
+public class SessionUploaderTest {
+
+    private static final String KEY = "6f1c0a9e-3c1d-3b5a-9a43-2c1b8d7e0f11";
+    private static final String PAYLOAD = "{\"sessionId\":\"s1\",\"entries\":[]}";
+
+    private MockWebServer mServer;
+    private SessionUploader mUploader;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+
+        final APIGatewayHelper api = new APIGatewayHelper(new OkHttpClient(), "test-key");
+        mUploader = new SessionUploader(api, mServer.url("/sessions").toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void postsSessionWithUidAndScriptIdQuery() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(200));
+
+        final int code = mUploader.upload(KEY, "u1", "script1", PAYLOAD, "token");
+        assertEquals(SessionUploader.Result.DONE, SessionUploader.classify(code));
+
+        final RecordedRequest request = mServer.takeRequest();
+        final HttpUrl url = request.getRequestUrl();
+        assertEquals("POST", request.getMethod());
+        assertEquals("/sessions", url.encodedPath());
+        assertEquals("\"u1\"", url.queryParameter("uid"));
+        assertEquals("\"script1\"", url.queryParameter("scriptId"));
+        assertEquals(PAYLOAD, request.getBody().readUtf8());
+        assertEquals("test-key", request.getHeader(APIGatewayHelper.HEADER_API_KEY));
+        assertEquals("Bearer token", request.getHeader(APIGatewayHelper.HEADER_AUTHORIZATION));
+    }
+
+    @Test
+    public void resendsIdenticalRequestAfterServerError() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.enqueue(new MockResponse().setResponseCode(200));
+
+        assertEquals(SessionUploader.Result.RETRY,
+                SessionUploader.classify(mUploader.upload(KEY, "u1", "script1", PAYLOAD, "token")));
+        assertEquals(SessionUploader.Result.DONE,
+                SessionUploader.classify(mUploader.upload(KEY, "u1", "script1", PAYLOAD, "token")));
+
+        final RecordedRequest first = mServer.takeRequest();
+        final RecordedRequest second = mServer.takeRequest();
+        assertEquals(KEY, first.getHeader(APIGatewayHelper.HEADER_IDEMPOTENCY_KEY));
+        assertEquals(KEY, second.getHeader(APIGatewayHelper.HEADER_IDEMPOTENCY_KEY));
+        assertEquals(first.getRequestUrl(), second.getRequestUrl());
+        assertEquals(first.getBody().readUtf8(), second.getBody().readUtf8());
+    }
+
+    @Test
+    public void classifiesResponses() {
+        assertEquals(SessionUploader.Result.DONE, SessionUploader.classify(201));
+        assertEquals(SessionUploader.Result.REJECTED, SessionUploader.classify(400));
+        assertEquals(SessionUploader.Result.REJECTED, SessionUploader.classify(409));
+        assertEquals(SessionUploader.Result.RETRY, SessionUploader.classify(408));
+        assertEquals(SessionUploader.Result.RETRY, SessionUploader.classify(429));
+        assertEquals(SessionUploader.Result.RETRY, SessionUploader.classify(500));
+        assertEquals(SessionUploader.Result.RETRY, SessionUploader.classify(SessionUploader.NO_RESPONSE));
+    }
+
+}